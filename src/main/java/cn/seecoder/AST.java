@@ -1,6 +1,56 @@
 package cn.seecoder;
 
+/**
+ * A lambda term. Nodes are immutable, so a subterm can be shared by any number of terms and threads.
+ */
 public abstract class AST {
+    /**
+     * Structural hash of the De Bruijn term, binder and variable names ignored, computed when the node
+     * is built.
+     */
+    final int hash;
+    /**
+     * Number of Abstraction, Application and Identifier nodes of the term, shared nodes counted
+     * as often as they appear.
+     */
+    final long size;
+    /**
+     * Number of nodes on the longest path from this node down to an identifier, both included.
+     */
+    final int depth;
+    /**
+     * Largest De Bruijn index, seen from this node, of an identifier bound outside the term; -1 if the
+     * term is closed. Free names (index -1) do not count, shifting never touches them.
+     */
+    final int maxFree;
+
+    AST(int hash, long size, int depth, int maxFree) {
+        this.hash = hash;
+        this.size = size;
+        this.depth = depth;
+        this.maxFree = maxFree;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getMaxFree() {
+        return maxFree;
+    }
+
+    /**
+     * @return whether no identifier of the term is bound outside it, so shifting or substituting
+     *         into it can only give it back unchanged
+     */
+    public boolean isClosed() {
+        return maxFree < 0;
+    }
+
     public abstract String toString();
     public abstract String toShow();
     public abstract String totree();
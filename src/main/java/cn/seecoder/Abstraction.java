@@ -1,14 +1,19 @@
 package cn.seecoder;
 
 public class Abstraction extends AST {
-    Identifier param;//变量
-    AST body;//表达式
+    final Identifier param;//变量
+    final AST body;//表达式
 
     Abstraction(Identifier p, AST b){
+        super(hash(b), b.size + 1, b.depth + 1, Math.max(b.maxFree - 1, -1));
         param = p;
         body = b;
     }
 
+    static int hash(AST body) {
+        return body.hash * 31 + 2;
+    }
+
     public String toString(){
         return "\\."+body.toString();
     }
@@ -1,32 +1,25 @@
 package cn.seecoder;
 
 public class Application extends AST{
-    AST lhs;//左树
-    AST rhs;//右树
+    final AST lhs;//左树
+    final AST rhs;//右树
 
     Application(AST l, AST s){
+        super(hash(l, s), l.size + s.size + 1, Math.max(l.depth, s.depth) + 1, Math.max(l.maxFree, s.maxFree));
         lhs = l;
         rhs = s;
     }
 
-    Application(){
-
-    }
-
     public AST getLhs() {
         return lhs;
     }
 
-    public void setLhs(AST lhs) {
-        this.lhs = lhs;
-    }
-
     public AST getRhs() {
         return rhs;
     }
 
-    public void setRhs(AST rhs) {
-        this.rhs = rhs;
+    static int hash(AST lhs, AST rhs) {
+        return (lhs.hash * 31 + rhs.hash) * 31 + 3;
     }
 
     public String toString(){
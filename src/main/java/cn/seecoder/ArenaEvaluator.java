@@ -0,0 +1,133 @@
+package cn.seecoder;
+
+/**
+ * Evaluates with the strategy and the fused substitution of Interpreter, on int handles into a
+ * {@link TermStore} instead of AST objects. Every node of the evaluation, intermediate terms included,
+ * lives in the store, a {@link TermArena} or a {@link MappedTermStore}; nothing is allocated per node
+ * on the heap.
+ *
+ * As in Interpreter, a subterm whose cached maxFree shows that a substitution or shift cannot change
+ * it is used as it is, and a node whose children come back unchanged keeps its handle.
+ */
+public class ArenaEvaluator implements Evaluator {
+
+    private final TermStore store;
+    private final EvalStats stats = new EvalStats();
+
+    public ArenaEvaluator() {
+        this(new TermArena());
+    }
+
+    /**
+     * @param store a {@link TermArena}, a {@link MappedTermStore} or any other TermStore; evaluate(AST)
+     *              copies its terms into it and resets it at the start of every call
+     */
+    public ArenaEvaluator(TermStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return beta steps and skipped traversals of every evaluation so far
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Copies ast into the store of this evaluator, evaluates it there and converts the normal form back.
+     */
+    public AST evaluate(AST ast) {
+        store.reset();
+        return store.toAST(evaluate(store, store.fromAST(ast)));
+    }
+
+    /**
+     * Evaluates the term at handle term in store, allocating the new nodes in store as well.
+     *
+     * @return handle of the normal form
+     */
+    public int evaluate(TermStore store, int term) {
+        return new Run(store).eval(term);
+    }
+
+    /**
+     * One evaluation on one store.
+     */
+    private final class Run {
+        private final TermStore store;
+
+        Run(TermStore store) {
+            this.store = store;
+        }
+
+        private int app(int node, int lhs, int rhs) {
+            return lhs == store.left(node) && rhs == store.right(node) ? node : store.app(lhs, rhs);
+        }
+
+        private int lam(int node, int body) {
+            return body == store.left(node) ? node : store.lam(store.right(node), body);
+        }
+
+        int eval(int term) {
+            while (true) {
+                byte tag = store.tag(term);
+                if (tag == TermStore.APP) {
+                    int lhs = store.left(term);
+                    int rhs = store.right(term);
+                    if (store.tag(lhs) == TermStore.LAM) {
+                        stats.betaReductions++;
+                        term = subst(store.left(lhs), rhs, 0);
+                    } else if (store.tag(lhs) == TermStore.APP) {
+                        lhs = eval(lhs);
+                        if (store.tag(rhs) != TermStore.VAR) rhs = eval(rhs);
+                        term = app(term, lhs, rhs);
+                        if (store.tag(lhs) != TermStore.LAM) return term;
+                    } else {
+                        return app(term, lhs, eval(rhs));
+                    }
+                } else if (tag == TermStore.LAM) {
+                    return lam(term, eval(store.left(term)));
+                } else {
+                    return term;
+                }
+            }
+        }
+
+        /**
+         * Interpreter.subst: puts value for the variables of node bound at depth and lowers those bound
+         * outside it.
+         */
+        private int subst(int node, int value, int depth) {
+            if (store.maxFree(node) < depth) {
+                stats.skippedTraversals++;
+                return node;
+            }
+            byte tag = store.tag(node);
+            if (tag == TermStore.APP) {
+                int lhs = subst(store.left(node), value, depth);
+                return app(node, lhs, subst(store.right(node), value, depth));
+            }
+            if (tag == TermStore.LAM) return lam(node, subst(store.left(node), value, depth + 1));
+            int index = store.right(node);
+            if (index == depth) return shift(depth, value, 0);
+            return store.var(store.left(node), index - 1);
+        }
+
+        /**
+         * Interpreter.shift: adds by to the variables of node whose index is at least from.
+         */
+        private int shift(int by, int node, int from) {
+            if (by == 0 || store.maxFree(node) < from) {
+                stats.skippedTraversals++;
+                return node;
+            }
+            byte tag = store.tag(node);
+            if (tag == TermStore.APP) {
+                int lhs = shift(by, store.left(node), from);
+                return app(node, lhs, shift(by, store.right(node), from));
+            }
+            if (tag == TermStore.LAM) return lam(node, shift(by, store.left(node), from + 1));
+            return store.var(store.left(node), store.right(node) + by);
+        }
+    }
+}
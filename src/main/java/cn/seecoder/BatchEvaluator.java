@@ -0,0 +1,108 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parses and evaluates a batch of independent sources in parallel, on the threads of a ForkJoinPool.
+ *
+ * The batch is split in halves down to runs of {@link #GRAIN} sources, each evaluated on one thread
+ * through a shared {@link Engine} with a context of its own. Results come back in the order of the
+ * sources, each with its time and beta steps; a source that does not parse or exceeds the beta
+ * reduction limit gets its error in its result and does not stop the rest of the batch.
+ */
+public class BatchEvaluator {
+
+    /**
+     * Sources evaluated in a row by one task; the corpus terms take tens of microseconds each, so
+     * smaller runs would spend more in task overhead than they gain in balance.
+     */
+    static final int GRAIN = 8;
+
+    private final Engine engine;
+    private final ForkJoinPool pool;
+    private final long maxBetaReductions;
+
+    /**
+     * Evaluates plain trees on the common ForkJoinPool, without limit.
+     */
+    public BatchEvaluator() {
+        this(new Engine(), ForkJoinPool.commonPool(), Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBetaReductions beta steps every source may take, see {@link EvalContext}
+     */
+    public BatchEvaluator(Engine engine, ForkJoinPool pool, long maxBetaReductions) {
+        this.engine = engine;
+        this.pool = pool;
+        this.maxBetaReductions = maxBetaReductions;
+    }
+
+    /**
+     * @return one result per source, in the order of sources
+     */
+    public List<BatchResult> evaluate(List<String> sources) {
+        BatchResult[] results = new BatchResult[sources.size()];
+        if (results.length > 0) {
+            pool.invoke(new Range(null, sources.toArray(new String[0]), results, 0, results.length));
+        }
+        return Arrays.asList(results);
+    }
+
+    public List<BatchResult> evaluate(Stream<String> sources) {
+        return evaluate(sources.collect(Collectors.toList()));
+    }
+
+    private BatchResult evaluate(int index, String source) {
+        EvalContext context = new EvalContext(TraceSink.OFF, maxBetaReductions);
+        long start = System.nanoTime();
+        AST result = null;
+        RuntimeException error = null;
+        try {
+            result = engine.evaluate(source, context);
+        } catch (RuntimeException e) {
+            error = e;
+        } catch (StackOverflowError e) {
+            //a term nested too deeply for the recursive Interpreter fails alone
+            error = new IllegalStateException("stack overflow", e);
+        }
+        return new BatchResult(index, source, result, error, System.nanoTime() - start,
+                context.getStats().getBetaReductions());
+    }
+
+    /**
+     * Evaluates sources [lo, hi), forking the upper half until at most GRAIN are left.
+     */
+    private final class Range extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] sources;
+        private final BatchResult[] results;
+        private final int lo;
+        private int hi;
+
+        Range(CountedCompleter<?> parent, String[] sources, BatchResult[] results, int lo, int hi) {
+            super(parent);
+            this.sources = sources;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public void compute() {
+            while (hi - lo > GRAIN) {
+                int mid = (lo + hi) >>> 1;
+                addToPendingCount(1);
+                new Range(this, sources, results, mid, hi).fork();
+                hi = mid;
+            }
+            for (int i = lo; i < hi; i++) results[i] = evaluate(i, sources[i]);
+            tryComplete();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package cn.seecoder;
+
+/**
+ * Outcome of one source of a {@link BatchEvaluator} batch: its normal form, or the error that stopped it.
+ */
+public class BatchResult {
+    private final int index;
+    private final String source;
+    private final AST result;
+    private final RuntimeException error;
+    private final long nanos;
+    private final long betaReductions;
+
+    BatchResult(int index, String source, AST result, RuntimeException error, long nanos, long betaReductions) {
+        this.index = index;
+        this.source = source;
+        this.result = result;
+        this.error = error;
+        this.nanos = nanos;
+        this.betaReductions = betaReductions;
+    }
+
+    /**
+     * @return position of the source in the batch
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the normal form, null if there was an error
+     */
+    public AST getResult() {
+        return result;
+    }
+
+    /**
+     * @return what went wrong parsing or evaluating the source, null if nothing did
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+
+    /**
+     * @return time spent parsing and evaluating the source, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getBetaReductions() {
+        return betaReductions;
+    }
+
+    public String toString() {
+        return index + ": " + (error == null ? result.toString() : "error " + error) + " (" + nanos / 1000 + " us, beta: " + betaReductions + ")";
+    }
+}
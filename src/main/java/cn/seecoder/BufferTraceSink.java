@@ -0,0 +1,25 @@
+package cn.seecoder;
+
+/**
+ * Collects the trace in memory, one message per line.
+ */
+public class BufferTraceSink implements TraceSink {
+    private final TraceLevel level;
+    private final StringBuilder builder = new StringBuilder();
+
+    public BufferTraceSink(TraceLevel level) {
+        this.level = level;
+    }
+
+    public TraceLevel getLevel() {
+        return level;
+    }
+
+    public void trace(String message) {
+        builder.append(message).append('\n');
+    }
+
+    public String toString() {
+        return builder.toString();
+    }
+}
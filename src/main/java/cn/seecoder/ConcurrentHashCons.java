@@ -0,0 +1,343 @@
+package cn.seecoder;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link HashCons} for any number of threads: parsers on several threads building terms from the same
+ * definitions get the same nodes, and {@link #intern(AST)} lets them share the results of their
+ * evaluations as well.
+ *
+ * The table is an array of buckets, each an immutable chain of weakly referenced nodes, chosen by the
+ * structural hash of the node mixed with its variable or parameter name, or with the identities of its
+ * children, which are interned already. A node is added
+ * by building a new head for its bucket and installing it with compareAndSet, so no thread ever waits
+ * for a lock; a thread whose compareAndSet fails because another thread changed the bucket first looks
+ * again. Nodes no term refers to any more are collected, and their dead entries are left out of the
+ * chain the next time an insert rewrites it.
+ *
+ * When the table gets full one thread doubles it, the others go on meanwhile. Old bucket i goes to
+ * new buckets i and i + old length, which only it maps to: they are filled first and then old bucket i
+ * is replaced by a forwarding entry, in one compareAndSet that fails, and is done again, if a node was
+ * added to old bucket i meanwhile. So a node is never found in two places, and two threads interning
+ * the same term always get the same node while it is alive.
+ */
+public class ConcurrentHashCons implements TermBuilder<AST> {
+
+    /**
+     * An entry of a bucket chain. Immutable: a bucket changes by getting a new head.
+     */
+    private static class Entry extends WeakReference<AST> {
+        final int hash;
+        final Entry next;
+
+        Entry(AST node, int hash, Entry next) {
+            super(node);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Head of an old bucket whose nodes are in the next table.
+     */
+    private static final class Moved extends Entry {
+        final AtomicReferenceArray<Entry> table;
+
+        Moved(AtomicReferenceArray<Entry> table) {
+            super(null, 0, null);
+            this.table = table;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Entry> table;
+    private final AtomicBoolean resizing = new AtomicBoolean();
+    //live and dead entries of the current table
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public ConcurrentHashCons() {
+        this(1 << 12);
+    }
+
+    /**
+     * @param capacity initial number of buckets, rounded up to a power of two
+     */
+    public ConcurrentHashCons(int capacity) {
+        table = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1);
+    }
+
+    public Identifier identifier(String name, int index) {
+        int hash = named(Identifier.hash(index), name);
+        int h = spread(hash);
+        Identifier built = null;
+        AtomicReferenceArray<Entry> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Entry head = t.get(i);
+            if (head instanceof Moved) {
+                t = ((Moved) head).table;
+                continue;
+            }
+            for (Entry e = head; e != null; e = e.next) {
+                AST node = e.get();
+                if (e.hash == hash && node instanceof Identifier
+                        && ((Identifier) node).DBindex == index && ((Identifier) node).name.equals(name)) {
+                    return (Identifier) node;
+                }
+            }
+            if (built == null) built = new Identifier(name, index);
+            if (insert(t, i, head, built)) return built;
+        }
+    }
+
+    public Abstraction abstraction(Identifier param, AST body) {
+        int hash = named(Abstraction.hash(body), param.name);
+        int h = spread(hash);
+        Abstraction built = null;
+        AtomicReferenceArray<Entry> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Entry head = t.get(i);
+            if (head instanceof Moved) {
+                t = ((Moved) head).table;
+                continue;
+            }
+            for (Entry e = head; e != null; e = e.next) {
+                AST node = e.get();
+                if (e.hash == hash && node instanceof Abstraction
+                        && ((Abstraction) node).body == body && ((Abstraction) node).param == param) {
+                    return (Abstraction) node;
+                }
+            }
+            if (built == null) built = new Abstraction(param, body);
+            if (insert(t, i, head, built)) return built;
+        }
+    }
+
+    /**
+     * A lambda over body whose parameter is the interned Identifier(param, 0).
+     */
+    public Abstraction abstraction(String param, AST body) {
+        return abstraction(identifier(param, 0), body);
+    }
+
+    public Application application(AST lhs, AST rhs) {
+        int hash = linked(Application.hash(lhs, rhs), lhs, rhs);
+        int h = spread(hash);
+        Application built = null;
+        AtomicReferenceArray<Entry> t = table;
+        while (true) {
+            int i = h & (t.length() - 1);
+            Entry head = t.get(i);
+            if (head instanceof Moved) {
+                t = ((Moved) head).table;
+                continue;
+            }
+            for (Entry e = head; e != null; e = e.next) {
+                AST node = e.get();
+                if (e.hash == hash && node instanceof Application
+                        && ((Application) node).lhs == lhs && ((Application) node).rhs == rhs) {
+                    return (Application) node;
+                }
+            }
+            if (built == null) built = new Application(lhs, rhs);
+            if (insert(t, i, head, built)) return built;
+        }
+    }
+
+    /**
+     * @return the interned node equal to term, names included, with all its subterms interned; term
+     *         itself if it is interned already
+     */
+    public AST intern(AST term) {
+        //children first, with an explicit stack so that deep terms do not overflow the Java stack
+        IdentityHashMap<AST, AST> interned = new IdentityHashMap<>();
+        ArrayDeque<AST> stack = new ArrayDeque<>();
+        stack.push(term);
+        while (!stack.isEmpty()) {
+            AST node = stack.peek();
+            if (interned.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            if (node instanceof Identifier) {
+                interned.put(node, identifier(((Identifier) node).name, ((Identifier) node).DBindex));
+                stack.pop();
+                continue;
+            }
+            AST left = node instanceof Application ? ((Application) node).lhs : ((Abstraction) node).param;
+            AST right = node instanceof Application ? ((Application) node).rhs : ((Abstraction) node).body;
+            AST lhs = interned.get(left);
+            AST rhs = interned.get(right);
+            if (lhs == null || rhs == null) {
+                if (lhs == null) stack.push(left);
+                if (rhs == null) stack.push(right);
+                continue;
+            }
+            interned.put(node, node instanceof Application ? application(lhs, rhs) : abstraction((Identifier) lhs, rhs));
+            stack.pop();
+        }
+        return interned.get(term);
+    }
+
+    /**
+     * @return number of entries of the table, nodes already collected included until their bucket changes
+     */
+    public long size() {
+        return entries.sum();
+    }
+
+    /**
+     * @return number of nodes built because no equal node was interned
+     */
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    /**
+     * @return number of inserts done again because another thread changed the bucket first
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the bucket hash of a node of structural hash hash with variable or parameter name: the
+     *         structural hash ignores names, so without it every alpha-variant of a term and every free
+     *         name would go to one bucket
+     */
+    private static int named(int hash, String name) {
+        return hash * 31 + name.hashCode();
+    }
+
+    /**
+     * @return the bucket hash of an application of structural hash hash: its children are interned, so
+     *         their identities tell apart the applications over alpha-variants or other free names
+     */
+    private static int linked(int hash, AST lhs, AST rhs) {
+        return (hash * 31 + System.identityHashCode(lhs)) * 31 + System.identityHashCode(rhs);
+    }
+
+    /**
+     * @return the hash node is kept under, see named() and linked()
+     */
+    private static int bucketHash(AST node) {
+        if (node instanceof Identifier) return named(node.hash, ((Identifier) node).name);
+        if (node instanceof Abstraction) return named(node.hash, ((Abstraction) node).param.name);
+        return linked(node.hash, ((Application) node).lhs, ((Application) node).rhs);
+    }
+
+    /**
+     * @return number of entries of the longest bucket chain of the current table
+     */
+    int longestChain() {
+        AtomicReferenceArray<Entry> t = table;
+        int longest = 0;
+        for (int i = 0; i < t.length(); i++) {
+            int length = 0;
+            for (Entry e = t.get(i); e != null && !(e instanceof Moved); e = e.next) length++;
+            longest = Math.max(longest, length);
+        }
+        return longest;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        return hash * 0x85EBCA6B;
+    }
+
+    /**
+     * Puts node, not found in the chain head of bucket i of t, at the head of the chain, leaving out the
+     * entries whose node was collected.
+     *
+     * @return false if another thread changed the bucket since head was read, and nothing was done
+     */
+    private boolean insert(AtomicReferenceArray<Entry> t, int i, Entry head, AST node) {
+        int dead = 0;
+        for (Entry e = head; e != null; e = e.next) {
+            if (e.get() == null) dead++;
+        }
+        if (!t.compareAndSet(i, head, new Entry(node, bucketHash(node), dead == 0 ? head : live(head)))) {
+            retries.increment();
+            return false;
+        }
+        inserts.increment();
+        entries.add(1 - dead);
+        if (entries.sum() > t.length()) resize(t);
+        return true;
+    }
+
+    /**
+     * @return a chain of the entries of head whose node is still alive: the entries before the last dead
+     *         one are copied, in order, in front of the part after it, which is shared
+     */
+    private static Entry live(Entry head) {
+        Entry lastDead = null;
+        for (Entry e = head; e != null; e = e.next) {
+            if (e.get() == null) lastDead = e;
+        }
+        if (lastDead == null) return head;
+        ArrayList<AST> nodes = new ArrayList<>();
+        int[] hashes = new int[16];
+        for (Entry e = head; e != lastDead; e = e.next) {
+            AST node = e.get();
+            if (node == null) continue;
+            if (nodes.size() == hashes.length) hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            hashes[nodes.size()] = e.hash;
+            nodes.add(node);
+        }
+        Entry chain = lastDead.next;
+        for (int i = nodes.size() - 1; i >= 0; i--) chain = new Entry(nodes.get(i), hashes[i], chain);
+        return chain;
+    }
+
+    /**
+     * Doubles t if it is still the current table and no other thread is doing it.
+     */
+    private void resize(AtomicReferenceArray<Entry> t) {
+        if (t != table || !resizing.compareAndSet(false, true)) return;
+        try {
+            if (t != table) return;
+            int n = t.length();
+            AtomicReferenceArray<Entry> next = new AtomicReferenceArray<>(n * 2);
+            Moved moved = new Moved(next);
+            long dropped = 0;
+            for (int i = 0; i < n; i++) {
+                while (true) {
+                    Entry head = t.get(i);
+                    Entry low = null;
+                    Entry high = null;
+                    long dead = 0;
+                    for (Entry e = head; e != null; e = e.next) {
+                        AST node = e.get();
+                        if (node == null) {
+                            dead++;
+                            continue;
+                        }
+                        if ((spread(e.hash) & n) == 0) low = new Entry(node, e.hash, low);
+                        else high = new Entry(node, e.hash, high);
+                    }
+                    //nobody else writes to i and i + n of next before old bucket i is moved
+                    next.set(i, low);
+                    next.set(i + n, high);
+                    if (t.compareAndSet(i, head, moved)) {
+                        dropped += dead;
+                        break;
+                    }
+                }
+            }
+            table = next;
+            entries.add(-dropped);
+        } finally {
+            resizing.set(false);
+        }
+    }
+}
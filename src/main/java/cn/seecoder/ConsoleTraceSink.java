@@ -0,0 +1,20 @@
+package cn.seecoder;
+
+/**
+ * Prints the trace to whatever System.out is at the time of the message.
+ */
+public class ConsoleTraceSink implements TraceSink {
+    private final TraceLevel level;
+
+    public ConsoleTraceSink(TraceLevel level) {
+        this.level = level;
+    }
+
+    public TraceLevel getLevel() {
+        return level;
+    }
+
+    public void trace(String message) {
+        System.out.println(message);
+    }
+}
@@ -0,0 +1,60 @@
+package cn.seecoder;
+
+/**
+ * Parses and evaluates terms with the strategy of {@link Interpreter}, from any number of threads at
+ * once.
+ *
+ * An Engine holds no state of its own calls: the Lexer, Parser and Interpreter of a call are built for
+ * it and dropped afterwards, and trace, counters and limits come from the {@link EvalContext} it is
+ * given. So one engine can be built once and shared, instead of one Interpreter per request confined
+ * to one thread. With a {@link ConcurrentHashCons}, the terms parsed by all calls share their common
+ * subterms, such as the definitions they are built from.
+ */
+public final class Engine {
+
+    private final ConcurrentHashCons terms;
+
+    /**
+     * Parses every source into a plain tree.
+     */
+    public Engine() {
+        this(null);
+    }
+
+    /**
+     * @param terms table every source is parsed through, null for plain trees
+     */
+    public Engine(ConcurrentHashCons terms) {
+        this.terms = terms;
+    }
+
+    /**
+     * @return the De Bruijn term of source, traced to the trace of context
+     */
+    public AST parse(String source, EvalContext context) {
+        return new Parser(new Lexer(source, context.getTrace()), context.getTrace(), terms).parse();
+    }
+
+    public AST evaluate(String source) {
+        return evaluate(source, new EvalContext());
+    }
+
+    public AST evaluate(String source, EvalContext context) {
+        return evaluate(parse(source, context), context);
+    }
+
+    public AST evaluate(AST ast) {
+        return evaluate(ast, new EvalContext());
+    }
+
+    /**
+     * @return the normal form of ast
+     * @throws IllegalStateException if it takes more beta steps than context allows
+     */
+    public AST evaluate(AST ast, EvalContext context) {
+        AST result = new Interpreter(context).evaluate(ast);
+        TraceSink trace = context.getTrace();
+        if (trace.isEnabled(TraceLevel.SUMMARY)) trace.trace("After interpreter De Bruijn: " + result.toString());
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package cn.seecoder;
+
+/**
+ * State of the calls to {@link Engine} made with it: where they trace to, what they count, and how far
+ * they may go. The engine itself keeps none, so a context belongs to one thread at a time while the
+ * engine is shared.
+ */
+public class EvalContext {
+    private final TraceSink trace;
+    private final EvalStats stats = new EvalStats();
+    private final long maxBetaReductions;
+
+    /**
+     * No trace and no limit.
+     */
+    public EvalContext() {
+        this(TraceSink.OFF, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param trace             receives the lexer, parser and interpreter trace of the calls
+     * @param maxBetaReductions beta steps each call may take, whatever the calls before it took; one more
+     *                          makes evaluate() throw an IllegalStateException, so a term without normal
+     *                          form cannot hold a thread
+     */
+    public EvalContext(TraceSink trace, long maxBetaReductions) {
+        if (maxBetaReductions < 0) throw new IllegalArgumentException("negative beta reduction limit");
+        this.trace = trace;
+        this.maxBetaReductions = maxBetaReductions;
+    }
+
+    public TraceSink getTrace() {
+        return trace;
+    }
+
+    /**
+     * @return counters of every call made with this context, added up; they do not count towards the
+     *         limit of later calls
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public long getMaxBetaReductions() {
+        return maxBetaReductions;
+    }
+}
@@ -0,0 +1,94 @@
+package cn.seecoder;
+
+/**
+ * Work counters of an evaluator, accumulated over every evaluate() until {@link #reset()}.
+ */
+public class EvalStats {
+    long betaReductions;
+    long thunkUpdates;
+    long thunkHits;
+    long interactions;
+    long skippedTraversals;
+    long substVisits;
+    long forks;
+
+    /**
+     * @return number of beta steps taken
+     */
+    public long getBetaReductions() {
+        return betaReductions;
+    }
+
+    /**
+     * @return number of shared arguments evaluated and overwritten with their value
+     */
+    public long getThunkUpdates() {
+        return thunkUpdates;
+    }
+
+    /**
+     * @return number of times an already evaluated shared argument was used again
+     */
+    public long getThunkHits() {
+        return thunkHits;
+    }
+
+    /**
+     * @return number of interaction net rewrites, beta steps included
+     */
+    public long getInteractions() {
+        return interactions;
+    }
+
+    /**
+     * @return number of shift/subst calls that returned their subterm as it is, because its cached
+     *         maximum free index showed that nothing in it could change
+     */
+    public long getSkippedTraversals() {
+        return skippedTraversals;
+    }
+
+    /**
+     * @return number of nodes visited by substitution and shifting
+     */
+    public long getSubstVisits() {
+        return substVisits;
+    }
+
+    /**
+     * @return number of tasks handed to the threads of a pool: subterms of ParallelEvaluator, runs of
+     *         active pairs of InteractionNetEvaluator
+     */
+    public long getForks() {
+        return forks;
+    }
+
+    /**
+     * Adds the counters of other to these.
+     */
+    void add(EvalStats other) {
+        betaReductions += other.betaReductions;
+        thunkUpdates += other.thunkUpdates;
+        thunkHits += other.thunkHits;
+        interactions += other.interactions;
+        skippedTraversals += other.skippedTraversals;
+        substVisits += other.substVisits;
+        forks += other.forks;
+    }
+
+    public void reset() {
+        betaReductions = 0;
+        thunkUpdates = 0;
+        thunkHits = 0;
+        interactions = 0;
+        skippedTraversals = 0;
+        substVisits = 0;
+        forks = 0;
+    }
+
+    public String toString() {
+        return "beta: " + betaReductions + ", thunk updates: " + thunkUpdates + ", thunk hits: " + thunkHits + ", interactions: " + interactions
+                + ", skipped traversals: " + skippedTraversals + ", subst visits: " + substVisits
+                + ", forks: " + forks;
+    }
+}
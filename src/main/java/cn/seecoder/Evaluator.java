@@ -0,0 +1,13 @@
+package cn.seecoder;
+
+/**
+ * An evaluation engine. Interpreter uses its own recursive substitution by default, other engines
+ * plug in through {@link Interpreter#Interpreter(Parser, Evaluator)}.
+ */
+public interface Evaluator {
+
+    /**
+     * @return the normal form of ast
+     */
+    AST evaluate(AST ast);
+}
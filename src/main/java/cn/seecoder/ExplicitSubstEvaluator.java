@@ -0,0 +1,137 @@
+package cn.seecoder;
+
+import java.util.ArrayList;
+
+/**
+ * Normal order evaluation with explicit substitutions in the style of the lambda-sigma calculus.
+ *
+ * A term under a pending substitution is a closure t[s]. A beta step (\.b)[s] a[s'] never touches the
+ * body: it only becomes the closure b[a[s'] . s]. Substitutions are pushed into a subterm one node at a
+ * time and only when evaluation looks at it, so a branch that is thrown away, like the unused arm of
+ * IF TRUE a b, is never copied or shifted.
+ *
+ * Shifts are suspended as well: going under a binder lifts s to 0 . (s o ^), which is one new cell, and
+ * the shift is only applied to a value when a variable is looked up in it. Since a substitution maps
+ * indices to terms in the right context, readback needs no variable levels: an identifier that reaches
+ * the shift at the end of the substitution is already the De Bruijn index of the normal form.
+ */
+public class ExplicitSubstEvaluator implements Evaluator {
+
+    /**
+     * A substitution: ^k (SHIFT), value . next (CONS), or next o ^k (SHIFTED, next followed by a shift).
+     */
+    private static final class Subst {
+        static final int SHIFT = 0;
+        static final int CONS = 1;
+        static final int SHIFTED = 2;
+
+        final int kind;
+        final int k;
+        final Closure value;
+        final Subst next;
+
+        private Subst(int kind, int k, Closure value, Subst next) {
+            this.kind = kind;
+            this.k = k;
+            this.value = value;
+            this.next = next;
+        }
+
+        static final Subst ID = new Subst(SHIFT, 0, null, null);
+
+        static Subst cons(Closure value, Subst next) {
+            return new Subst(CONS, 0, value, next);
+        }
+
+        /**
+         * s o ^k, folding shifts into each other.
+         */
+        static Subst shift(Subst s, int k) {
+            if (k == 0) return s;
+            if (s.kind == SHIFT) return new Subst(SHIFT, s.k + k, null, null);
+            if (s.kind == SHIFTED) return new Subst(SHIFTED, s.k + k, null, s.next);
+            return new Subst(SHIFTED, k, null, s);
+        }
+    }
+
+    /**
+     * term[subst]
+     */
+    private static final class Closure {
+        final AST term;
+        final Subst subst;
+
+        Closure(AST term, Subst subst) {
+            this.term = term;
+            this.subst = subst;
+        }
+    }
+
+    private final EvalStats stats = new EvalStats();
+
+    /**
+     * @return beta steps of every evaluate() so far
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public AST evaluate(AST ast) {
+        return readback(ast, Subst.ID);
+    }
+
+    /**
+     * 0 . (s o ^): the substitution for the body of a lambda that readback goes under.
+     */
+    private static Subst lift(Identifier param, Subst s) {
+        return Subst.cons(new Closure(new Identifier(param.name, 0), Subst.ID), Subst.shift(s, 1));
+    }
+
+    /**
+     * Normalizes term[subst].
+     */
+    private AST readback(AST term, Subst subst) {
+        ArrayList<Closure> args = new ArrayList<>();
+        AST head;
+        while (true) {
+            if (term instanceof Application) {
+                args.add(new Closure(((Application) term).rhs, subst));
+                term = ((Application) term).lhs;
+            } else if (term instanceof Abstraction) {
+                Abstraction abstraction = (Abstraction) term;
+                if (args.isEmpty()) {
+                    return new Abstraction(abstraction.param, readback(abstraction.body, lift(abstraction.param, subst)));
+                }
+                stats.betaReductions++;
+                subst = Subst.cons(args.remove(args.size() - 1), subst);
+                term = abstraction.body;
+            } else {
+                Identifier identifier = (Identifier) term;
+                if (identifier.DBindex < 0) {
+                    head = identifier;
+                    break;
+                }
+                //look the index up, collecting the shifts passed on the way
+                int index = identifier.DBindex;
+                int shift = 0;
+                Subst s = subst;
+                while (s.kind != Subst.SHIFT && (s.kind == Subst.SHIFTED || index > 0)) {
+                    if (s.kind == Subst.SHIFTED) shift += s.k;
+                    else index--;
+                    s = s.next;
+                }
+                if (s.kind == Subst.SHIFT) {
+                    head = new Identifier(identifier.name, index + s.k + shift);
+                    break;
+                }
+                term = s.value.term;
+                subst = Subst.shift(s.value.subst, shift);
+            }
+        }
+        //a variable applied to the arguments left on the stack, the innermost argument is on top
+        for (int i = args.size() - 1; i >= 0; i--) {
+            head = new Application(head, readback(args.get(i).term, args.get(i).subst));
+        }
+        return head;
+    }
+}
@@ -0,0 +1,90 @@
+package cn.seecoder;
+
+/**
+ * Interning table of terms: a node is only built if no structurally identical node is in the table yet,
+ * otherwise the one in the table is returned. Children are interned before their parents, so two nodes
+ * are identical when their children are the same objects and their De Bruijn index or names are equal,
+ * and the terms built through one table form a DAG with one node per distinct subterm.
+ *
+ * Names are compared too, so toShow() of a shared node is right for every place it appears.
+ *
+ * Not thread-safe.
+ */
+public class HashCons implements TermBuilder<AST> {
+
+    private AST[] table = new AST[1024];
+    private int size;
+
+    /**
+     * @return number of distinct nodes interned so far
+     */
+    public int size() {
+        return size;
+    }
+
+    public Identifier identifier(String name, int index) {
+        int hash = Identifier.hash(index);
+        for (int i = slot(hash); ; i = (i + 1) & (table.length - 1)) {
+            AST node = table[i];
+            if (node == null) return (Identifier) insert(i, new Identifier(name, index));
+            if (node.hash == hash && node instanceof Identifier
+                    && ((Identifier) node).DBindex == index && ((Identifier) node).name.equals(name)) {
+                return (Identifier) node;
+            }
+        }
+    }
+
+    public Abstraction abstraction(Identifier param, AST body) {
+        int hash = Abstraction.hash(body);
+        for (int i = slot(hash); ; i = (i + 1) & (table.length - 1)) {
+            AST node = table[i];
+            if (node == null) return (Abstraction) insert(i, new Abstraction(param, body));
+            if (node.hash == hash && node instanceof Abstraction
+                    && ((Abstraction) node).body == body && ((Abstraction) node).param == param) {
+                return (Abstraction) node;
+            }
+        }
+    }
+
+    /**
+     * A lambda over body whose parameter is the interned Identifier(param, 0).
+     */
+    public Abstraction abstraction(String param, AST body) {
+        return abstraction(identifier(param, 0), body);
+    }
+
+    public Application application(AST lhs, AST rhs) {
+        int hash = Application.hash(lhs, rhs);
+        for (int i = slot(hash); ; i = (i + 1) & (table.length - 1)) {
+            AST node = table[i];
+            if (node == null) return (Application) insert(i, new Application(lhs, rhs));
+            if (node.hash == hash && node instanceof Application
+                    && ((Application) node).lhs == lhs && ((Application) node).rhs == rhs) {
+                return (Application) node;
+            }
+        }
+    }
+
+    private int slot(int hash) {
+        hash ^= hash >>> 16;
+        return (hash * 0x85EBCA6B) & (table.length - 1);
+    }
+
+    /**
+     * Stores node at the free slot i, doubling the table when it gets half full.
+     */
+    private AST insert(int i, AST node) {
+        table[i] = node;
+        if (++size * 2 > table.length) {
+            AST[] old = table;
+            table = new AST[old.length * 2];
+            for (AST entry : old) {
+                if (entry == null) continue;
+                int j = slot(entry.hash);
+                while (table[j] != null) j = (j + 1) & (table.length - 1);
+                table[j] = entry;
+            }
+        }
+        return node;
+    }
+}
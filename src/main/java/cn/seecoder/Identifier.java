@@ -2,42 +2,29 @@ package cn.seecoder;
 
 public class Identifier extends AST {
 
-    String name; //名字
-    String value;//De Bruijn index值
-    int DBindex;
-
-    public Identifier(String n,String v){
+    final String name; //名字
+    final int DBindex;//De Bruijn index值, -1 for a free variable
 
+    public Identifier(String n,int index){
+        super(hash(index), 1, 1, index);
         name = n;
-        value = v;
+        DBindex = index;
+    }
+
+    static int hash(int index) {
+        return index * 0x9E3779B9 + 1;
     }
 
     public int getDBindex() {
-        return Integer.valueOf(value);
+        return DBindex;
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
-    public String getValue() {
-        return value;
-    }
-
-    public void setValue(String value) {
-        this.value = value;
-    }
-
-    public void setDBindex(int DBindex) {
-        this.DBindex = DBindex;
-    }
-
     public String toString(){
-        return value;
+        return String.valueOf(DBindex);
     }
 
     public String toShow(){
@@ -0,0 +1,17 @@
+package cn.seecoder;
+
+/**
+ * {@link TermBuilder} for nodes that are int handles, so that building a term allocates no Integer:
+ * Parser calls it bottom up, children before their parent. Handles are never negative.
+ */
+interface IntTermBuilder {
+
+    /**
+     * @param index De Bruijn index, -1 for a free variable
+     */
+    int identifier(String name, int index);
+
+    int abstraction(String param, int body);
+
+    int application(int lhs, int rhs);
+}
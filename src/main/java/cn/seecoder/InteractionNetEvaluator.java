@@ -0,0 +1,564 @@
+package cn.seecoder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Optimal reduction on an interaction net (Lamping's algorithm with the levels of Gonthier, Abadi and Lévy).
+ *
+ * The term is translated into a net of LAM, APP, DUP (fan), CROISSANT, BRACKET, ERA (eraser) and FREE
+ * nodes, each with a level. Every node has one principal port; two nodes whose principal ports are
+ * wired together form an active pair and are rewritten by a local rule: APP-LAM is a beta step, two
+ * nodes of the same kind and level annihilate, any other pair commutes, the node of the higher level
+ * being moved one level down by a croissant and one level up by a bracket of the lower level. The
+ * argument of an application lives one level above it and croissants/brackets mark where variables
+ * enter and leave it, so a DUP only ever copies what belongs to its own level. A shared argument is
+ * never copied as a whole, DUPs copy it one node at a time and only as far as the copies differ, so
+ * every redex of a shared subterm is reduced once for all its copies.
+ *
+ * Readback works like normalization by evaluation on the net: a lambda at the root is applied to a
+ * fresh variable node and reduced again, a stuck application is cut into function and argument, and a
+ * DUP or croissant/bracket standing in front of a stuck application is pushed through it to unshare
+ * what is about to be printed.
+ *
+ * Pending erasures are rewritten first, one at a time, so that garbage is cut off before it is reduced
+ * any further. The other active pairs are rewritten in rounds: once no erasure is pending, every
+ * pending pair that touches no node of a pair taken before it, neighbours included, is taken into the
+ * round and the others wait for the next one. The pairs of a round share no node, so given a
+ * ForkJoinPool they are rewritten in parallel without locks, split in runs of grain pairs. The pairs
+ * they create are scheduled in the order of the pairs that created them, with or without a pool, so
+ * the pool changes which threads do the rewrites but not which rewrites are done.
+ *
+ * The net is reduced completely, arguments that are later erased included, so a term whose discarded
+ * part has no normal form may not terminate here although eval() would.
+ */
+public class InteractionNetEvaluator implements Evaluator {
+
+    private static final int ROOT = 0;
+    private static final int LAM = 1;        // ports: 0 root, 1 body, 2 variable
+    private static final int APP = 2;        // ports: 0 function, 1 argument, 2 result
+    private static final int DUP = 3;        // ports: 0 shared value, 1 and 2 the copies
+    private static final int CROISSANT = 4;  // ports: 0 outside, 1 inside; lowers what passes by one level
+    private static final int BRACKET = 5;    // ports: 0 outside, 1 inside; raises what passes by one level
+    private static final int ERA = 6;
+    private static final int FREE = 7;       // a variable free in the evaluated term, data is its Identifier
+    private static final int VAR = 8;        // a variable bound by readback at level
+
+    private static final int[] ARITY = {1, 3, 3, 3, 2, 2, 1, 1, 1};
+
+    private static final class Node {
+        final int kind;
+        final int level;
+        final Identifier data;
+        final Node[] to;
+        final int[] at;
+        //last round whose pairs touch this node
+        int round;
+
+        Node(int kind, int level, Identifier data) {
+            this.kind = kind;
+            this.level = level;
+            this.data = data;
+            to = new Node[ARITY[kind]];
+            at = new int[ARITY[kind]];
+        }
+    }
+
+    /**
+     * Pairs rewritten in a row by one task of a round by default; a rewrite takes about a hundred
+     * nanoseconds, so shorter runs would spend more in task overhead than they gain.
+     */
+    static final int GRAIN = 256;
+
+    private final ForkJoinPool pool;
+    private final int grain;
+    private final EvalStats stats = new EvalStats();
+    private long interactions;
+    private long betas;
+    private long runs;
+    private int round;
+
+    /**
+     * Rewrites the active pairs on the calling thread.
+     */
+    public InteractionNetEvaluator() {
+        this(null, GRAIN);
+    }
+
+    /**
+     * Rewrites the active pairs in rounds on pool, in runs of {@link #GRAIN} pairs.
+     */
+    public InteractionNetEvaluator(ForkJoinPool pool) {
+        this(pool, GRAIN);
+    }
+
+    /**
+     * @param pool  pool the rounds are rewritten on, null to rewrite them on the calling thread
+     * @param grain pairs rewritten in a row by one task; a round of grain pairs or less is rewritten on
+     *              the calling thread
+     */
+    public InteractionNetEvaluator(ForkJoinPool pool, int grain) {
+        if (grain < 1) throw new IllegalArgumentException("grain " + grain);
+        this.pool = pool;
+        this.grain = grain;
+    }
+
+    /**
+     * @return beta steps (APP-LAM), all interactions and the runs of rounds handed to the pool in the
+     *         last evaluate()
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public AST evaluate(AST ast) {
+        interactions = 0;
+        betas = 0;
+        runs = 0;
+        ArrayList<Node> redexes = new ArrayList<>();
+        Node root = new Node(ROOT, 0, null);
+        Wire wire = translate(ast, 0, 0, redexes);
+        link(root, 0, wire.node, wire.port, redexes);
+        reduce(redexes);
+        AST result = readback(root, 0);
+        stats.betaReductions = betas;
+        stats.interactions = interactions;
+        stats.forks = runs;
+        return result;
+    }
+
+    /**
+     * Rewrites redexes and every active pair they create until none is left.
+     */
+    private void reduce(ArrayList<Node> redexes) {
+        if (redexes.isEmpty()) return;
+        //erasures go first, so that garbage is cut off before it is reduced any further
+        ArrayDeque<Node> erasures = new ArrayDeque<>();
+        ArrayDeque<Node> work = new ArrayDeque<>();
+        schedule(redexes, erasures, work);
+        ArrayList<Node> created = new ArrayList<>();
+        while (!erasures.isEmpty() || !work.isEmpty()) {
+            if (erasures.isEmpty()) {
+                round(erasures, work);
+                continue;
+            }
+            Node a = erasures.pop();
+            Node b = erasures.pop();
+            if (!isWired(a, b)) continue;
+            count(a, b);
+            interact(a, b, created);
+            schedule(created, erasures, work);
+            created.clear();
+        }
+        redexes.clear();
+    }
+
+    /**
+     * Rewrites the pairs of work that touch disjoint nodes, on the pool if there are more than grain,
+     * leaves the others in work, and schedules the pairs the rewrites create.
+     */
+    private void round(ArrayDeque<Node> erasures, ArrayDeque<Node> work) {
+        round++;
+        ArrayList<Node> pairs = new ArrayList<>();
+        ArrayDeque<Node> later = new ArrayDeque<>();
+        while (!work.isEmpty()) {
+            Node a = work.pop();
+            Node b = work.pop();
+            if (!isWired(a, b)) continue;
+            if (claim(a, b)) {
+                count(a, b);
+                pairs.add(a);
+                pairs.add(b);
+            } else {
+                later.add(a);
+                later.add(b);
+            }
+        }
+        work.addAll(later);
+        if (pool == null || pairs.size() <= 2 * grain) {
+            ArrayList<Node> created = new ArrayList<>();
+            for (int i = 0; i < pairs.size(); i += 2) interact(pairs.get(i), pairs.get(i + 1), created);
+            schedule(created, erasures, work);
+            return;
+        }
+        int n = (pairs.size() / 2 + grain - 1) / grain;
+        ArrayList<ArrayList<Node>> created = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) created.add(new ArrayList<>());
+        runs += n;
+        pool.invoke(new Run(null, pairs, created, 0, n));
+        for (ArrayList<Node> redexes : created) schedule(redexes, erasures, work);
+    }
+
+    /**
+     * Claims a, b and their neighbours, all the nodes the rewrite of a and b changes, for this round.
+     *
+     * @return false, claiming nothing, if another pair of the round claimed one of them already
+     */
+    private boolean claim(Node a, Node b) {
+        if (a.round == round || b.round == round) return false;
+        for (Node node : a.to) {
+            if (node.round == round) return false;
+        }
+        for (Node node : b.to) {
+            if (node.round == round) return false;
+        }
+        a.round = round;
+        b.round = round;
+        for (Node node : a.to) node.round = round;
+        for (Node node : b.to) node.round = round;
+        return true;
+    }
+
+    /**
+     * Counts the rewrite of a and b, on the thread that schedules it.
+     */
+    private void count(Node a, Node b) {
+        interactions++;
+        if (isBeta(a, b)) betas++;
+    }
+
+    private static boolean isBeta(Node a, Node b) {
+        return a.kind == APP && b.kind == LAM || a.kind == LAM && b.kind == APP;
+    }
+
+    private static void schedule(ArrayList<Node> redexes, ArrayDeque<Node> erasures, ArrayDeque<Node> work) {
+        for (int i = 0; i < redexes.size(); i += 2) {
+            ArrayDeque<Node> queue = redexes.get(i).kind == ERA || redexes.get(i + 1).kind == ERA ? erasures : work;
+            queue.add(redexes.get(i));
+            queue.add(redexes.get(i + 1));
+        }
+    }
+
+    private static void link(Node a, int i, Node b, int j, ArrayList<Node> redexes) {
+        a.to[i] = b;
+        a.at[i] = j;
+        b.to[j] = a;
+        b.at[j] = i;
+        if (i == 0 && j == 0 && isRedex(a, b) || a.kind == ERA && isGarbage(b, j)) {
+            redexes.add(a);
+            redexes.add(b);
+        } else if (b.kind == ERA && isGarbage(a, i)) {
+            redexes.add(b);
+            redexes.add(a);
+        }
+    }
+
+    /**
+     * An eraser at port of node erases it too: the result of an application or the inside of a
+     * croissant/bracket nobody uses, whatever their principal port is wired to.
+     */
+    private static boolean isGarbage(Node node, int port) {
+        return node.kind == APP && port == 2 || (node.kind == CROISSANT || node.kind == BRACKET) && port == 1;
+    }
+
+    /**
+     * A queued pair is stale once one of its nodes was erased by another rewrite.
+     */
+    private static boolean isWired(Node a, Node b) {
+        return a.to[0] == b && b.to[a.at[0]] == a;
+    }
+
+    private static boolean isVariable(Node node) {
+        return node.kind == FREE || node.kind == VAR;
+    }
+
+    private static boolean isRedex(Node a, Node b) {
+        if (a.kind == ROOT || b.kind == ROOT) return false;
+        if (isVariable(a)) return b.kind >= DUP && b.kind <= ERA;
+        if (isVariable(b)) return a.kind >= DUP && a.kind <= ERA;
+        return true;
+    }
+
+    /**
+     * A port whose wire is still open.
+     */
+    private static class Wire {
+        final Node node;
+        final int port;
+
+        Wire(Node node, int port) {
+            this.node = node;
+            this.port = port;
+        }
+    }
+
+    /**
+     * The net of a term: the port its root is wired to, and one open wire for each variable bound
+     * outside the term, keyed by the level of its binder (0 for the outermost).
+     */
+    private static final class Translation extends Wire {
+        final HashMap<Integer, Wire> free;
+
+        Translation(Node node, int port, HashMap<Integer, Wire> free) {
+            super(node, port);
+            this.free = free;
+        }
+    }
+
+    /**
+     * Translates term at level, under binders enclosing binders.
+     */
+    private Translation translate(AST term, int level, int binders, ArrayList<Node> redexes) {
+        if (term instanceof Application) {
+            Translation function = translate(((Application) term).lhs, level, binders, redexes);
+            Translation argument = translate(((Application) term).rhs, level + 1, binders, redexes);
+            Node app = new Node(APP, level, null);
+            link(app, 0, function.node, function.port, redexes);
+            link(app, 1, argument.node, argument.port, redexes);
+            HashMap<Integer, Wire> free = function.free;
+            for (Map.Entry<Integer, Wire> entry : argument.free.entrySet()) {
+                //variables leave the argument through a bracket, variables used on both sides are shared by a DUP
+                Node bracket = new Node(BRACKET, level, null);
+                link(bracket, 1, entry.getValue().node, entry.getValue().port, redexes);
+                Wire outside = new Wire(bracket, 0);
+                Wire inside = free.get(entry.getKey());
+                if (inside != null) {
+                    Node dup = new Node(DUP, level, null);
+                    link(dup, 1, inside.node, inside.port, redexes);
+                    link(dup, 2, bracket, 0, redexes);
+                    outside = new Wire(dup, 0);
+                }
+                free.put(entry.getKey(), outside);
+            }
+            return new Translation(app, 2, free);
+        }
+        if (term instanceof Abstraction) {
+            Translation body = translate(((Abstraction) term).body, level, binders + 1, redexes);
+            Node lam = new Node(LAM, level, ((Abstraction) term).param);
+            link(lam, 1, body.node, body.port, redexes);
+            Wire variable = body.free.remove(binders);
+            if (variable == null) link(lam, 2, new Node(ERA, 0, null), 0, redexes);
+            else link(lam, 2, variable.node, variable.port, redexes);
+            return new Translation(lam, 0, body.free);
+        }
+        Identifier identifier = (Identifier) term;
+        int index = identifier.DBindex;
+        HashMap<Integer, Wire> free = new HashMap<>();
+        if (index < 0 || index >= binders) {
+            //free: keep -1, count other indices from the outside of the evaluated term
+            Identifier outside = index < 0 ? identifier : new Identifier(identifier.name, index - binders);
+            return new Translation(new Node(FREE, 0, outside), 0, free);
+        }
+        Node croissant = new Node(CROISSANT, level, null);
+        free.put(binders - 1 - index, new Wire(croissant, 0));
+        return new Translation(croissant, 1, free);
+    }
+
+    /**
+     * How a node changes the level of the nodes passing through it.
+     */
+    private static int offset(Node node) {
+        return node.kind == CROISSANT ? -1 : node.kind == BRACKET ? 1 : 0;
+    }
+
+    /**
+     * Rewrites the active pair a, b. Every active pair the rewrite wires up is added to redexes.
+     */
+    private static void interact(Node a, Node b, ArrayList<Node> redexes) {
+        if (a.kind == ERA || b.kind == ERA) {
+            Node other = a.kind == ERA ? b : a;
+            int port = a.kind == ERA ? a.at[0] : b.at[0];
+            for (int i = 0; i < other.to.length; i++) {
+                if (i != port) link(other.to[i], other.at[i], new Node(ERA, 0, null), 0, redexes);
+            }
+        } else if (isVariable(a) || isVariable(b)) {
+            //a variable is copied by a DUP and passes croissants and brackets unchanged
+            Node variable = isVariable(a) ? a : b;
+            Node other = isVariable(a) ? b : a;
+            for (int i = 1; i < other.to.length; i++) {
+                link(other.to[i], other.at[i], new Node(variable.kind, variable.level, variable.data), 0, redexes);
+            }
+        } else if (isBeta(a, b)) {
+            Node app = a.kind == APP ? a : b;
+            Node lam = a.kind == APP ? b : a;
+            if (app.level != lam.level) throw new IllegalStateException("beta between levels " + app.level + " and " + lam.level);
+            annihilate(app, 1, lam, 2, redexes);
+            annihilate(app, 2, lam, 1, redexes);
+        } else if (a.kind == b.kind && a.level == b.level) {
+            for (int i = 1; i < a.to.length; i++) annihilate(a, i, b, i, redexes);
+        } else if (a.level == b.level) {
+            throw new IllegalStateException("nodes " + a.kind + " and " + b.kind + " meet at level " + a.level);
+        } else {
+            commute(a, 0, b, 0, redexes);
+        }
+    }
+
+    /**
+     * Wires the neighbour of a.i to the neighbour of b.j, reading both again so that a wire between two
+     * ports of the pair itself is followed through.
+     */
+    private static void annihilate(Node a, int i, Node b, int j, ArrayList<Node> redexes) {
+        link(a.to[i], a.at[i], b.to[j], b.at[j], redexes);
+    }
+
+    /**
+     * The ports of a node other than its principal port p, in order.
+     */
+    private static int[] others(Node node, int p) {
+        int[] ports = new int[node.to.length - 1];
+        for (int i = 0, k = 0; i < node.to.length; i++) {
+            if (i != p) ports[k++] = i;
+        }
+        return ports;
+    }
+
+    /**
+     * a and b meet at ports pa and pb (their principal ports, except when readback forces a copy): each
+     * passes through the other. b is copied in front of every other port of a and a behind every other
+     * port of b; the copies of the node with the higher level are moved by the other one.
+     */
+    private static void commute(Node a, int pa, Node b, int pb, ArrayList<Node> redexes) {
+        int[] auxA = others(a, pa);
+        int[] auxB = others(b, pb);
+        int levelA = a.level;
+        int levelB = b.level;
+        if (levelA < levelB) levelB += offset(a);
+        else levelA += offset(b);
+        Node[] copiesA = new Node[auxB.length];
+        Node[] copiesB = new Node[auxA.length];
+        for (int k = 0; k < auxB.length; k++) copiesA[k] = new Node(a.kind, levelA, a.data);
+        for (int m = 0; m < auxA.length; m++) copiesB[m] = new Node(b.kind, levelB, b.data);
+        //outer neighbours; a port of the pair itself is replaced by the copy that takes its place
+        Node[] nodes = new Node[auxA.length + auxB.length];
+        int[] ports = new int[nodes.length];
+        for (int m = 0; m < auxA.length; m++) {
+            nodes[m] = a.to[auxA[m]];
+            ports[m] = a.at[auxA[m]];
+        }
+        for (int k = 0; k < auxB.length; k++) {
+            nodes[auxA.length + k] = b.to[auxB[k]];
+            ports[auxA.length + k] = b.at[auxB[k]];
+        }
+        boolean[] done = new boolean[nodes.length];
+        for (int n = 0; n < nodes.length; n++) {
+            if (nodes[n] == a) {
+                int m = indexOf(auxA, ports[n]);
+                nodes[n] = copiesB[m];
+                ports[n] = pb;
+                if (n >= auxA.length) done[m] = true;
+            } else if (nodes[n] == b) {
+                int k = indexOf(auxB, ports[n]);
+                nodes[n] = copiesA[k];
+                ports[n] = pa;
+                if (n >= auxA.length) done[auxA.length + k] = true;
+            }
+        }
+        for (int m = 0; m < auxA.length; m++) {
+            if (!done[m]) link(copiesB[m], pb, nodes[m], ports[m], redexes);
+        }
+        for (int k = 0; k < auxB.length; k++) {
+            if (!done[auxA.length + k]) link(copiesA[k], pa, nodes[auxA.length + k], ports[auxA.length + k], redexes);
+        }
+        for (int m = 0; m < auxA.length; m++) {
+            for (int k = 0; k < auxB.length; k++) {
+                link(copiesB[m], auxB[k], copiesA[k], auxA[m], redexes);
+            }
+        }
+    }
+
+    private static int indexOf(int[] ports, int port) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] == port) return i;
+        }
+        throw new IllegalStateException("no port " + port);
+    }
+
+    /**
+     * Rewrites the pairs of runs [lo, hi) of a round, forking the upper half until one run is left.
+     */
+    private final class Run extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<Node> pairs;
+        private final ArrayList<ArrayList<Node>> created;
+        private final int lo;
+        private int hi;
+
+        Run(CountedCompleter<?> parent, ArrayList<Node> pairs, ArrayList<ArrayList<Node>> created, int lo, int hi) {
+            super(parent);
+            this.pairs = pairs;
+            this.created = created;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public void compute() {
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                addToPendingCount(1);
+                new Run(this, pairs, created, mid, hi).fork();
+                hi = mid;
+            }
+            int end = Math.min(pairs.size(), 2 * grain * (lo + 1));
+            for (int i = 2 * grain * lo; i < end; i += 2) interact(pairs.get(i), pairs.get(i + 1), created.get(lo));
+            tryComplete();
+        }
+    }
+
+    /**
+     * Reads back the term wired to root, under depth binders. The net must have no active pair.
+     */
+    private AST readback(Node root, int depth) {
+        ArrayList<Node> redexes = new ArrayList<>();
+        while (true) {
+            Node node = root.to[0];
+            int port = root.at[0];
+            switch (node.kind) {
+                case LAM:
+                    if (port != 0) break;
+                    //apply the lambda to a fresh variable and read what it reduces to
+                    Node app = new Node(APP, node.level, null);
+                    Identifier param = node.data;
+                    link(app, 1, new Node(VAR, depth, param), 0, redexes);
+                    link(app, 2, root, 0, redexes);
+                    link(app, 0, node, 0, redexes);
+                    reduce(redexes);
+                    return new Abstraction(param, readback(root, depth + 1));
+                case APP:
+                    if (port != 2) break;
+                    Node function = new Node(ROOT, 0, null);
+                    Node argument = new Node(ROOT, 0, null);
+                    link(function, 0, node.to[0], node.at[0], redexes);
+                    link(argument, 0, node.to[1], node.at[1], redexes);
+                    AST lhs = readback(function, depth);
+                    return new Application(lhs, readback(argument, depth));
+                case VAR:
+                    return new Identifier(node.data.name, depth - 1 - node.level);
+                case FREE:
+                    return node.data.DBindex < 0 ? node.data : new Identifier(node.data.name, node.data.DBindex + depth);
+                case DUP:
+                case CROISSANT:
+                case BRACKET:
+                    if (port == 0) break;
+                    unshare(node, redexes);
+                    reduce(redexes);
+                    continue;
+            }
+            throw new IllegalStateException("unexpected port " + port + " of node " + node.kind + " at the root");
+        }
+    }
+
+    /**
+     * node is a DUP, croissant or bracket in front of the term being read. Follows its principal port
+     * up to the stuck application it shares or moves and pushes the last DUP/croissant/bracket of the
+     * way through that application, as if its result port were principal.
+     */
+    private void unshare(Node node, ArrayList<Node> redexes) {
+        while (true) {
+            Node next = node.to[0];
+            int port = node.at[0];
+            if (port != 0 && (next.kind == DUP || next.kind == CROISSANT || next.kind == BRACKET)) {
+                node = next;
+            } else if (next.kind == APP && port == 2) {
+                commute(node, 0, next, 2, redexes);
+                return;
+            } else {
+                throw new IllegalStateException("cannot unshare through port " + port + " of node " + next.kind);
+            }
+        }
+    }
+}
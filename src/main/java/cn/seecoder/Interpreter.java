@@ -1,32 +1,117 @@
 package cn.seecoder;
 
-public class Interpreter {
+import java.util.concurrent.ForkJoinTask;
+
+public class Interpreter implements Evaluator {
     Parser parser;
     private AST astAfterParser;
     private AST result;
-    private StringBuilder builder = new StringBuilder();//ctx which use to mark different type.
+    private final TraceSink trace;
+    private final Evaluator evaluator;
+    private final NormalFormCache cache;
+    private final EvalStats stats;
+    private final long maxBetaReductions;
+    //betaReductions of stats when this interpreter started: the limit is for its own steps
+    private final long betaReductionsBefore;
+    private final ParallelEvaluator forks;
 
     public Interpreter(Parser p) {
+        this(p, TraceSink.OFF);
+    }
+
+    /**
+     * Evaluates with another engine instead of the recursive substitution of this class.
+     */
+    public Interpreter(Parser p, Evaluator evaluator) {
         parser = p;
+        trace = TraceSink.OFF;
+        this.evaluator = evaluator;
+        cache = null;
+        stats = new EvalStats();
+        maxBetaReductions = Long.MAX_VALUE;
+        betaReductionsBefore = 0;
+        forks = null;
+        astAfterParser = p.parse();
+    }
+
+    /**
+     * @param trace receives every evaluation step at {@link TraceLevel#STEPS}
+     *              and every subst/shift at {@link TraceLevel#FULL}
+     */
+    public Interpreter(Parser p, TraceSink trace) {
+        this(p, trace, null);
+    }
+
+    /**
+     * @param cache normal forms looked up before, and stored after, reducing a closed application; it
+     *              can be shared by several interpreters evaluating related terms
+     */
+    public Interpreter(Parser p, TraceSink trace, NormalFormCache cache) {
+        parser = p;
+        this.trace = trace;
+        evaluator = this;
+        this.cache = cache;
+        stats = new EvalStats();
+        maxBetaReductions = Long.MAX_VALUE;
+        betaReductionsBefore = 0;
+        forks = null;
         astAfterParser = p.parse();
         //System.out.println("After parser:"+astAfterParser.toString());
     }
 
+    /**
+     * An interpreter for one call of {@link Engine}, with no source of its own: evaluate(AST) traces to
+     * and counts in context, and stops once it has taken more beta steps of its own than context allows.
+     */
+    Interpreter(EvalContext context) {
+        this(context, null);
+    }
+
+    /**
+     * @param forks evaluates large independent subterms as parallel tasks, null to evaluate them in turn
+     */
+    Interpreter(EvalContext context, ParallelEvaluator forks) {
+        trace = context.getTrace();
+        evaluator = this;
+        cache = null;
+        stats = context.getStats();
+        maxBetaReductions = context.getMaxBetaReductions();
+        betaReductionsBefore = stats.betaReductions;
+        this.forks = forks;
+    }
+
     public Interpreter(String lambda){
-        Lexer lexer = new Lexer(lambda);
-        parser = new Parser(lexer);
-        astAfterParser = parser.parse();
-        result = this.eval();
+        this(lambda, TraceSink.OFF);
     }
 
-    public StringBuilder getBuilder() {
-        return builder;
+    /**
+     * Parses and evaluates lambda, writing lexer, parser and interpreter trace to the same sink.
+     */
+    public Interpreter(String lambda, TraceSink trace){
+        this.trace = trace;
+        evaluator = this;
+        cache = null;
+        stats = new EvalStats();
+        maxBetaReductions = Long.MAX_VALUE;
+        betaReductionsBefore = 0;
+        forks = null;
+        Lexer lexer = new Lexer(lambda, trace);
+        parser = new Parser(lexer, trace);
+        astAfterParser = parser.parse();
+        result = this.eval();
     }
 
     public AST getResult() {
         return result;
     }
 
+    /**
+     * @return counters of the recursive substitution of this class, zero if another engine is used
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
     private final boolean isAbstraction(AST ast) {
         return ast instanceof Abstraction;
     }
@@ -40,42 +125,71 @@ public class Interpreter {
     }
 
     public AST eval() {
+        AST ast = evaluator.evaluate(astAfterParser);
+        if (trace.isEnabled(TraceLevel.SUMMARY)) trace.trace("After interpreter De Bruijn: " + ast.toString());
+        return ast;
+    }
 
-        return evalAST(astAfterParser);
+    public AST evaluate(AST ast) {
+        return evalAST(ast);
     }
 
+    /**
+     * Normal form of ast, through the cache if there is one: a closed application is reduced only if no
+     * alpha-equivalent term was reduced before.
+     */
     private AST evalAST(AST ast) {
+        if (cache == null || !isApplication(ast) || !ast.isClosed()) return reduce(ast);
+        AST normalForm = cache.get(ast);
+        if (normalForm == null) {
+            normalForm = reduce(ast);
+            cache.put(ast, normalForm);
+        }
+        return normalForm;
+    }
+
+    private AST reduce(AST ast) {
         while(true){
-            builder.append("now is eval: "+ast.toShow()+"\n");
+            if (trace.isEnabled(TraceLevel.STEPS)) trace.trace("now is eval: "+ast.toShow());
             if(ast instanceof Application){
                 if(isAbstraction(((Application) ast).getLhs())){
 
-                    builder.append("now is substitute   "+"node: "+
+                    if (trace.isEnabled(TraceLevel.STEPS)) trace.trace("now is substitute   "+"node: "+
                             ((Abstraction)((Application) ast).getLhs()).toShow()+
-                            "    value: "+((Application) ast).getRhs().toShow()+"\n");
+                            "    value: "+((Application) ast).getRhs().toShow());
 
+                    if (++stats.betaReductions - betaReductionsBefore > maxBetaReductions) {
+                        throw new IllegalStateException("no normal form within " + maxBetaReductions + " beta reductions");
+                    }
                     ast = substitute(((Abstraction)((Application) ast).getLhs()).body,((Application) ast).getRhs());
                 }
                 else if(isApplication(((Application) ast).getLhs())&&!isIdentifier(((Application) ast).getRhs())){
-                    ((Application) ast).setLhs(evalAST(((Application) ast).getLhs()));
-                    ((Application) ast).setRhs(evalAST(((Application) ast).getRhs()));
+                    //lhs and rhs are independent: with forks, a large rhs is evaluated by another thread meanwhile
+                    ForkJoinTask<AST> rhs = forks == null ? null : forks.fork(((Application) ast).getLhs(), ((Application) ast).getRhs());
+                    if (rhs != null) stats.forks++;
+                    AST lhs = null;
+                    try {
+                        lhs = evalAST(((Application) ast).getLhs());
+                    } finally {
+                        //lhs failed: nobody will join rhs, so skip it if not yet started
+                        if (lhs == null && rhs != null) rhs.cancel(true);
+                    }
+                    ast = application((Application) ast, lhs, rhs == null ? evalAST(((Application) ast).getRhs()) : forks.join(rhs, stats));
                     if(isAbstraction(((Application) ast).getLhs())) ast = evalAST(ast);
                     return ast;
                 }
                 else if(isApplication(((Application) ast).getLhs())&&isIdentifier(((Application) ast).getRhs())){
-                    ((Application) ast).setLhs(evalAST(((Application) ast).getLhs()));
+                    ast = application((Application) ast, evalAST(((Application) ast).getLhs()), ((Application) ast).getRhs());
                     if(isAbstraction(((Application) ast).getLhs())) ast = evalAST(ast);
                     return ast;
                 }
                 //(isIdentifier(((Application) ast).getLhs())
                 else{
-                    ((Application) ast).setRhs(evalAST(((Application) ast).getRhs()));
-                    return ast;
+                    return application((Application) ast, ((Application) ast).getLhs(), evalAST(((Application) ast).getRhs()));
                 }
             }
             else if(isAbstraction(ast)){
-                ((Abstraction) ast).body = evalAST(((Abstraction) ast).body);
-                return ast;
+                return abstraction((Abstraction) ast, evalAST(((Abstraction) ast).body));
             }
             else{
                 return ast;
@@ -83,15 +197,35 @@ public class Interpreter {
         }
     }
 
+    /**
+     * @return node itself if lhs and rhs are its children, otherwise a new Application of them
+     */
+    private static AST application(Application node, AST lhs, AST rhs) {
+        return lhs == node.lhs && rhs == node.rhs ? node : new Application(lhs, rhs);
+    }
+
+    /**
+     * @return node itself if body is its body, otherwise a new Abstraction of its param over body
+     */
+    private static AST abstraction(Abstraction node, AST body) {
+        return body == node.body ? node : new Abstraction(node.param, body);
+    }
+
+    /**
+     * Same result as shift(-1, subst'(node, shift(1, value, 0), 0), 0) with a plain subst', in one pass
+     * over node: the value is shifted only where it is put, the binder removal only lowers the
+     * identifiers bound outside it.
+     */
     private AST substitute(AST node, AST value) {
-        return shift(-1, subst(node, shift(1, value, 0), 0), 0);
+        return subst(node, value, 0);
     }
 
     /**
-     * value替换node节点中的变量：
+     * value替换node节点中的变量，同时去掉被消去的binder：
      * 如果节点是Applation，分别对左右树替换；
      * 如果node节点是abstraction，替入node.body时深度得+1；
-     * 如果node是identifier，则替换De Bruijn index值等于depth的identifier（替换之后value的值加深depth）
+     * 如果node是identifier，则替换De Bruijn index值等于depth的identifier（替换之后value的值加深depth），
+     * index大于depth的identifier指向外层的binder，减1
      *
      * @param value 替换成为的value
      * @param node  被替换的整个节点
@@ -102,18 +236,25 @@ public class Interpreter {
      * @throws  (方法有异常的话加)
      */
     private AST subst(AST node, AST value, int depth) {
+        //nothing in node is bound at or outside depth
+        if(node.maxFree<depth){
+            stats.skippedTraversals++;
+            return node;
+        }
+        stats.substVisits++;
         if(isApplication(node)){
-            return new Application(subst(((Application) node).getLhs(),value,depth),subst(((Application) node).getRhs(),value,depth));
+            return application((Application) node,subst(((Application) node).getLhs(),value,depth),subst(((Application) node).getRhs(),value,depth));
         }
         else if(isAbstraction(node)){
-            return new Abstraction(((Abstraction) node).param,subst(((Abstraction) node).body,value,depth+1));
+            return abstraction((Abstraction) node,subst(((Abstraction) node).body,value,depth+1));
         }
         else{
             if(depth==((Identifier)node).getDBindex()) {
-                builder.append("subst: "+"from "+node.toShow()+" ("+node.toString()+") "+" to "+value.toShow()+"\n");
+                if (trace.isEnabled(TraceLevel.FULL)) trace.trace("subst: "+"from "+node.toShow()+" ("+node.toString()+") "+" to "+value.toShow());
                 return shift(depth,value,0);
             }
-            else return node;
+            //index > depth: bound outside the removed binder
+            else return new Identifier(((Identifier) node).name, ((Identifier) node).getDBindex()-1);
         }
     }
 
@@ -132,26 +273,30 @@ public class Interpreter {
      * @throws  (方法有异常的话加)
      */
 
-    private AST shift(int by, AST node, int from){
-        builder.append("now is shift: "+node.toShow()+"\n");
+    AST shift(int by, AST node, int from){
+        //nothing in node is bound outside from, closed arguments always return here
+        if(by==0||node.maxFree<from){
+            stats.skippedTraversals++;
+            return node;
+        }
+        stats.substVisits++;
+        if (trace.isEnabled(TraceLevel.FULL)) trace.trace("now is shift: "+node.toShow());
         if(isApplication(node)){
             //param1 = shift(by,node.lhs,from)
             //param2 = shift(by,node.rhs,from)
-            return new Application(shift(by,((Application)(node)).getLhs(),from), shift(by,((Application)(node)).getRhs(),from));
+            return application((Application) node,shift(by,((Application)(node)).getLhs(),from), shift(by,((Application)(node)).getRhs(),from));
         }
         else if(isAbstraction(node)){
             //param 1 = node.param
             //param 2 = shift(by,node.body,from+1)
-            return new Abstraction(((Abstraction) node).param,shift(by,((Abstraction) node).body,from+1));
+            return abstraction((Abstraction) node,shift(by,((Abstraction) node).body,from+1));
         }
         else{
             //param 1 = node.name
-            //param 2 = String.valueOf(node.getDBindex()+node.getDEindex()>= from ? by:0)
-            //我是一个伪文艺的Java8青年!
-//            System.out.println(node.toShow());
-//            if((((Identifier) node).getDBindex() >= from)) System.out.println("Using");
-            Identifier identifier = new Identifier(((Identifier) node).name, String.valueOf(((Identifier) node).getDBindex() + (((Identifier) node).getDBindex() >= from ? by : 0)));
-            builder.append("shift(by: "+by+" from: "+from+"): "+"lambda: "+node.toShow()+" De Bruijn: "+node.toString()+" to "+identifier.toString()+"\n");
+            //param 2 = node.getDBindex() + by, an index below from was returned as it is above
+            int index = ((Identifier) node).getDBindex();
+            Identifier identifier = new Identifier(((Identifier) node).name, index + by);
+            if (trace.isEnabled(TraceLevel.FULL)) trace.trace("shift(by: "+by+" from: "+from+"): "+"lambda: "+node.toShow()+" De Bruijn: "+node.toString()+" to "+identifier.toString());
             return identifier;
 
         }
@@ -71,18 +71,11 @@ public class InterpreterBuilder {
     public class InterpreterListener implements ActionListener{
         public void actionPerformed(ActionEvent ev){
             lambda = question.getText();
-            Lexer lexer = new Lexer(lambda);
-            Parser parser = new Parser(lexer);
-            AST p = parser.parse();
-            interpreter = new Interpreter(lambda);
+            BufferTraceSink trace = new BufferTraceSink(TraceLevel.FULL);
+            interpreter = new Interpreter(lambda, trace);
             result = interpreter.getResult();
             answer.setText(result.toShow()+"\n"+result.toString());
-            StringBuilder builder = new StringBuilder();
-            builder.append(lambda+"\n");
-            builder.append(lexer.builder.toString()+"\n");
-            builder.append("Before interpreter De Bruijn: "+p.toString()+"\n");
-            builder.append(interpreter.getBuilder().toString());
-            process.setText(builder.toString()+"\n"+result.toString()+"\n");
+            process.setText(lambda+"\n"+trace.toString()+"\n"+result.toString()+"\n");
         }
     }
 
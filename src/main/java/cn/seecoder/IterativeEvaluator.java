@@ -0,0 +1,190 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates with the same strategy as Interpreter.evalAST, but reduction, substitution and shifting
+ * run on work stacks in the heap instead of the Java stack, so the depth of a term is only limited by
+ * memory and never causes a StackOverflowError.
+ *
+ * Changed nodes are rebuilt and unchanged subtrees are returned as they are.
+ */
+public class IterativeEvaluator implements Evaluator {
+
+    // continuations of evaluate
+    private static final int APP_RHS = 0;    // lhs of an application evaluated, rhs is next
+    private static final int APP_BUILD = 1;  // lhs and rhs of an application evaluated
+    private static final int IDENT_APP = 2;  // rhs of an application with an identifier lhs evaluated
+    private static final int ABS_BUILD = 3;  // body of an abstraction evaluated
+
+    // frames of map
+    private static final int VISIT = 4;
+    private static final int BUILD = 5;
+
+    // what map does to an identifier
+    private static final int SHIFT = 0;
+    private static final int SUBST = 1;
+
+    /**
+     * Parallel arrays of frames, growing as needed.
+     */
+    private static final class Frames {
+        int[] kinds = new int[64];
+        int[] depths = new int[64];
+        AST[] nodes = new AST[64];
+        AST[] saved = new AST[64];
+        int size;
+
+        void push(int kind, int depth, AST node, AST value) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+                saved = Arrays.copyOf(saved, size * 2);
+            }
+            kinds[size] = kind;
+            depths[size] = depth;
+            nodes[size] = node;
+            saved[size] = value;
+            size++;
+        }
+
+        void pop() {
+            size--;
+            nodes[size] = null;
+            saved[size] = null;
+        }
+    }
+
+    public AST evaluate(AST ast) {
+        Frames frames = new Frames();
+        AST current = ast;
+        boolean evaluating = true;
+        while (true) {
+            if (evaluating) {
+                if (current instanceof Application) {
+                    Application application = (Application) current;
+                    if (application.lhs instanceof Abstraction) {
+                        current = substitute(((Abstraction) application.lhs).body, application.rhs);
+                    } else if (application.lhs instanceof Application) {
+                        frames.push(APP_RHS, 0, application, null);
+                        current = application.lhs;
+                    } else {
+                        frames.push(IDENT_APP, 0, application, null);
+                        current = application.rhs;
+                    }
+                } else if (current instanceof Abstraction) {
+                    frames.push(ABS_BUILD, 0, current, null);
+                    current = ((Abstraction) current).body;
+                } else {
+                    evaluating = false;
+                }
+                continue;
+            }
+            if (frames.size == 0) return current;
+            int top = frames.size - 1;
+            int kind = frames.kinds[top];
+            AST node = frames.nodes[top];
+            AST lhs = frames.saved[top];
+            frames.pop();
+            switch (kind) {
+                case APP_RHS:
+                    frames.push(APP_BUILD, 0, node, current);
+                    current = ((Application) node).rhs;
+                    evaluating = true;
+                    break;
+                case APP_BUILD:
+                    if (lhs != ((Application) node).lhs || current != ((Application) node).rhs) {
+                        node = new Application(lhs, current);
+                    }
+                    current = node;
+                    //the lhs became an abstraction: reduce the rebuilt application again
+                    evaluating = lhs instanceof Abstraction;
+                    break;
+                case IDENT_APP:
+                    if (current != ((Application) node).rhs) current = new Application(((Application) node).lhs, current);
+                    else current = node;
+                    break;
+                default:
+                    if (current != ((Abstraction) node).body) current = new Abstraction(((Abstraction) node).param, current);
+                    else current = node;
+            }
+        }
+    }
+
+    private AST substitute(AST node, AST value) {
+        return subst(node, value, 0);
+    }
+
+    /**
+     * Same as Interpreter.subst: replaces the identifiers of node bound at depth by value and lowers
+     * those bound outside it, in one pass.
+     */
+    private AST subst(AST node, AST value, int depth) {
+        return map(node, SUBST, depth, 0, value);
+    }
+
+    /**
+     * Same as Interpreter.shift: adds by to the identifiers of node whose index is at least from.
+     */
+    private AST shift(int by, AST node, int from) {
+        return map(node, SHIFT, from, by, null);
+    }
+
+    /**
+     * Rebuilds node bottom up with every identifier replaced as given by mode. base is the depth
+     * (SUBST) or the cut-off (SHIFT) outside node, each abstraction adds one for its body.
+     */
+    private AST map(AST node, int mode, int base, int by, AST value) {
+        Frames frames = new Frames();
+        AST[] results = new AST[64];
+        int size = 0;
+        frames.push(VISIT, base, node, null);
+        while (frames.size > 0) {
+            int top = frames.size - 1;
+            int kind = frames.kinds[top];
+            int depth = frames.depths[top];
+            AST current = frames.nodes[top];
+            frames.pop();
+            if (kind == VISIT) {
+                //nothing in current is bound at or outside depth: it comes back unchanged
+                if (current.maxFree < depth || mode == SHIFT && by == 0) {
+                    if (size == results.length) results = Arrays.copyOf(results, size * 2);
+                    results[size++] = current;
+                    continue;
+                }
+                if (current instanceof Application) {
+                    frames.push(BUILD, depth, current, null);
+                    frames.push(VISIT, depth, ((Application) current).rhs, null);
+                    frames.push(VISIT, depth, ((Application) current).lhs, null);
+                    continue;
+                }
+                if (current instanceof Abstraction) {
+                    frames.push(BUILD, depth, current, null);
+                    frames.push(VISIT, depth + 1, ((Abstraction) current).body, null);
+                    continue;
+                }
+                int index = ((Identifier) current).DBindex;
+                if (mode == SHIFT) {
+                    if (index >= depth) current = new Identifier(((Identifier) current).name, index + by);
+                } else if (index == depth) {
+                    current = shift(depth, value, 0);
+                } else if (index > depth) {
+                    current = new Identifier(((Identifier) current).name, index - 1);
+                }
+            } else if (current instanceof Application) {
+                AST rhs = results[--size];
+                AST lhs = results[--size];
+                if (lhs != ((Application) current).lhs || rhs != ((Application) current).rhs) {
+                    current = new Application(lhs, rhs);
+                }
+            } else {
+                AST body = results[--size];
+                if (body != ((Abstraction) current).body) current = new Abstraction(((Abstraction) current).param, body);
+            }
+            if (size == results.length) results = Arrays.copyOf(results, size * 2);
+            results[size++] = current;
+        }
+        return results[0];
+    }
+}
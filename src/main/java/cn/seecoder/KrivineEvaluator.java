@@ -0,0 +1,103 @@
+package cn.seecoder;
+
+import java.util.ArrayList;
+
+/**
+ * Normal order evaluation on a Krivine machine.
+ *
+ * A beta step never copies the body or the argument: the argument is pushed on the machine stack as a
+ * closure (term + environment) and the body runs in the environment extended by it. The machine stops
+ * at weak head normal form; readback then continues under the lambda with a fresh variable and through
+ * the arguments of a variable head, which gives the same strong normal form as Interpreter.eval().
+ */
+public class KrivineEvaluator implements Evaluator {
+
+    /**
+     * Persistent environment, entry 0 is De Bruijn index 0. An entry is either an argument closure
+     * (term, env) or, when term is null, a variable bound at level by readback.
+     */
+    private static final class Env {
+        final AST term;
+        final Env env;
+        final int level;
+        final String name;
+        final Env next;
+        final int size;
+
+        Env(AST term, Env env, Env next) {
+            this.term = term;
+            this.env = env;
+            this.level = -1;
+            this.name = null;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+
+        Env(int level, String name, Env next) {
+            this.term = null;
+            this.env = null;
+            this.level = level;
+            this.name = name;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    public AST evaluate(AST ast) {
+        return readback(ast, null, 0);
+    }
+
+    private static int size(Env env) {
+        return env == null ? 0 : env.size;
+    }
+
+    /**
+     * Normalizes the closure (term, env) under depth binders.
+     */
+    private AST readback(AST term, Env env, int depth) {
+        ArrayList<AST> terms = new ArrayList<>();
+        ArrayList<Env> envs = new ArrayList<>();
+        AST head;
+        while (true) {
+            if (term instanceof Application) {
+                terms.add(((Application) term).rhs);
+                envs.add(env);
+                term = ((Application) term).lhs;
+            } else if (term instanceof Abstraction) {
+                Abstraction abstraction = (Abstraction) term;
+                if (terms.isEmpty()) {
+                    Env bound = new Env(depth, abstraction.param.name, env);
+                    return new Abstraction(abstraction.param, readback(abstraction.body, bound, depth + 1));
+                }
+                int top = terms.size() - 1;
+                env = new Env(terms.remove(top), envs.remove(top), env);
+                term = abstraction.body;
+            } else {
+                Identifier identifier = (Identifier) term;
+                int index = identifier.DBindex;
+                if (index < 0) {
+                    head = identifier;
+                    break;
+                }
+                if (index >= size(env)) {
+                    //free in the term given to evaluate
+                    head = new Identifier(identifier.name, index - size(env) + depth);
+                    break;
+                }
+                Env entry = env;
+                for (int i = 0; i < index; i++) entry = entry.next;
+                if (entry.term == null) {
+                    head = new Identifier(entry.name, depth - 1 - entry.level);
+                    break;
+                }
+                term = entry.term;
+                env = entry.env;
+            }
+        }
+        //a variable applied to the arguments left on the stack, the innermost argument is on top
+        for (int i = terms.size() - 1; i >= 0; i--) {
+            head = new Application(head, readback(terms.get(i), envs.get(i), depth));
+        }
+        return head;
+    }
+}
@@ -0,0 +1,183 @@
+package cn.seecoder;
+
+import cn.seecoder.Readback.Neutral;
+import cn.seecoder.Readback.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Call-by-need evaluation: the Krivine machine of {@link KrivineEvaluator} with shared, updatable thunks.
+ *
+ * Every argument becomes one {@link Thunk}. The first variable that needs it evaluates it to weak head
+ * normal form and overwrites the thunk with the value (an update marker on the stack tells the machine
+ * where), every later use takes the value as it is. A lambda that uses its argument several times, like
+ * SUCC's n or AND's p, therefore reduces it only once. Readback to the strong normal form is the
+ * {@link Readback} of NbeEvaluator, with thunks as arguments.
+ *
+ * {@link #getStats()} counts beta steps, updates and reuses; compare its beta count with
+ * {@link Interpreter#getStats()} to see how many reductions sharing saved.
+ */
+public class LazyEvaluator implements Evaluator {
+
+    /**
+     * An argument (term, env) and, once evaluated, its value.
+     */
+    private static final class Thunk {
+        final AST term;
+        final Env env;
+        Value value;
+
+        Thunk(AST term, Env env) {
+            this.term = term;
+            this.env = env;
+        }
+
+        Thunk(Value value) {
+            this.term = null;
+            this.env = null;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Persistent environment, entry 0 is De Bruijn index 0.
+     */
+    private static final class Env {
+        final Thunk thunk;
+        final Env next;
+        final int size;
+
+        Env(Thunk thunk, Env next) {
+            this.thunk = thunk;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    /**
+     * A lambda with its environment.
+     */
+    private static final class Lambda extends Value {
+        final Abstraction abstraction;
+        final Env env;
+
+        Lambda(Abstraction abstraction, Env env) {
+            this.abstraction = abstraction;
+            this.env = env;
+        }
+    }
+
+    /**
+     * Stack entry telling the machine to store the value it returns in thunk.
+     */
+    private static final class Update {
+        final Thunk thunk;
+
+        Update(Thunk thunk) {
+            this.thunk = thunk;
+        }
+    }
+
+    private final EvalStats stats = new EvalStats();
+
+    private final Readback<Thunk> readback = new Readback<Thunk>(new Thunk[0]) {
+        Value force(Thunk arg) {
+            return LazyEvaluator.this.force(arg);
+        }
+
+        Identifier param(Value lambda) {
+            return ((Lambda) lambda).abstraction.param;
+        }
+
+        Value instantiate(Value lambda, Neutral<Thunk> variable) {
+            Env env = new Env(new Thunk(variable), ((Lambda) lambda).env);
+            return whnf(((Lambda) lambda).abstraction.body, env, new ArrayList<>());
+        }
+    };
+
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public AST evaluate(AST ast) {
+        return readback.readback(whnf(ast, null, new ArrayList<>()), 0);
+    }
+
+    private static int size(Env env) {
+        return env == null ? 0 : env.size;
+    }
+
+    private Value force(Thunk thunk) {
+        if (thunk.value != null) {
+            stats.thunkHits++;
+            return thunk.value;
+        }
+        ArrayList<Object> stack = new ArrayList<>();
+        stack.add(new Update(thunk));
+        return whnf(thunk.term, thunk.env, stack);
+    }
+
+    /**
+     * Runs the machine on (term, env) with the given stack of argument thunks and update markers until
+     * the stack is empty and the term is a value.
+     */
+    private Value whnf(AST term, Env env, ArrayList<Object> stack) {
+        while (true) {
+            Value value = null;
+            if (term instanceof Application) {
+                stack.add(new Thunk(((Application) term).rhs, env));
+                term = ((Application) term).lhs;
+                continue;
+            }
+            if (term instanceof Abstraction) {
+                value = new Lambda((Abstraction) term, env);
+            } else {
+                Identifier identifier = (Identifier) term;
+                int index = identifier.DBindex;
+                if (index < 0 || index >= size(env)) {
+                    value = readback.free(identifier, size(env));
+                } else {
+                    Env entry = env;
+                    for (int i = 0; i < index; i++) entry = entry.next;
+                    Thunk thunk = entry.thunk;
+                    if (thunk.value != null) {
+                        stats.thunkHits++;
+                        value = thunk.value;
+                    } else {
+                        stack.add(new Update(thunk));
+                        term = thunk.term;
+                        env = thunk.env;
+                        continue;
+                    }
+                }
+            }
+            //return value to the stack
+            while (true) {
+                if (stack.isEmpty()) return value;
+                Object top = stack.get(stack.size() - 1);
+                if (top instanceof Update) {
+                    stack.remove(stack.size() - 1);
+                    ((Update) top).thunk.value = value;
+                    stats.thunkUpdates++;
+                } else if (value instanceof Lambda) {
+                    stack.remove(stack.size() - 1);
+                    stats.betaReductions++;
+                    env = new Env((Thunk) top, ((Lambda) value).env);
+                    term = ((Lambda) value).abstraction.body;
+                    break;
+                } else {
+                    //a neutral term takes every argument up to the next update marker
+                    int end = stack.size();
+                    int start = end;
+                    while (start > 0 && stack.get(start - 1) instanceof Thunk) start--;
+                    Neutral<Thunk> neutral = readback.neutral(value);
+                    Thunk[] args = Arrays.copyOf(neutral.args, neutral.args.length + end - start);
+                    for (int i = neutral.args.length, j = end - 1; j >= start; i++, j--) args[i] = (Thunk) stack.get(j);
+                    stack.subList(start, end).clear();
+                    value = new Neutral<>(neutral.level, neutral.head, args);
+                }
+            }
+        }
+    }
+}
@@ -1,55 +1,71 @@
 package cn.seecoder;
 
-import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+/**
+ * Table-driven lexer.
+ *
+ * Every character is classified through the static {@link #CLASSES} table and the source is scanned
+ * forward exactly once, so lexing is linear in the source length and allocates nothing except the
+ * String of each LCID token.
+ *
+ * Characters that belong to no token (blanks, digits, ...) yield a {@code null} token, which the
+ * Parser skips with {@code match(null)}.
+ */
 public class Lexer {
 
-    public StringBuilder builder = new StringBuilder();
     public String source;
     public int index;
     public TokenType token;
     public String tokenvalue;
     private char[] sources;
-    private static final String PATTERNSTRING = "[a-z][a-zA-Z]*";
-    private String LCID = "";
     private boolean flag = true;
+    private final TraceSink trace;
+
+    //character classes, see CLASSES
+    private static final byte OTHER = 0;
+    private static final byte LOWER = 1;   // [a-z], may start an LCID
+    private static final byte UPPER = 2;   // [A-Z], may only continue an LCID
+    private static final byte SINGLE = 3;  // one character token, see SINGLES
 
-    private static final HashMap<Character, TokenType> types = new HashMap<>();
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenType[] SINGLES = new TokenType[128];
 
     static {
-        types.put('.', TokenType.DOT);
-        types.put('(', TokenType.LPAREN);
-        types.put(')', TokenType.RPAREN);
-        types.put('\\', TokenType.LAMBDA);
+        for (char c = 'a'; c <= 'z'; c++) CLASSES[c] = LOWER;
+        for (char c = 'A'; c <= 'Z'; c++) CLASSES[c] = UPPER;
+        SINGLES['.'] = TokenType.DOT;
+        SINGLES['('] = TokenType.LPAREN;
+        SINGLES[')'] = TokenType.RPAREN;
+        SINGLES['\\'] = TokenType.LAMBDA;
+        for (char c = 0; c < 128; c++) {
+            if (SINGLES[c] != null) CLASSES[c] = SINGLE;
+        }
     }
 
+    /**
+     * A lexer that prints every token to the console, one per line.
+     */
     public Lexer(String s) {
+        this(s, new ConsoleTraceSink(TraceLevel.STEPS));
+    }
+
+    /**
+     * @param trace receives every token at {@link TraceLevel#STEPS}
+     */
+    public Lexer(String s, TraceSink trace) {
+        this.trace = trace;
         index = 0;
         source = s;
         sources = source.toCharArray();
         nextToken();
     }
 
-    private void setType(char s) {
-        if (types.containsKey(s)) {
-            token = types.get(s);
-            return;
-        }
-        setLCID(String.valueOf(s));
+    private static byte classOf(char c) {
+        return c < 128 ? CLASSES[c] : OTHER;
     }
 
-    private void setLCID(String s) {
-        token = null;
-        Pattern pattern = Pattern.compile(PATTERNSTRING);
-        Matcher matcher = pattern.matcher(s);
-        if (matcher.matches()) {
-            token = TokenType.LCID;
-            tokenvalue = s;
-        } else {
-            tokenvalue = "";
-        }
+    private static boolean isLetter(char c) {
+        byte type = classOf(c);
+        return type == LOWER || type == UPPER;
     }
 
     public void setMyValue(String s) {
@@ -59,34 +75,36 @@ public class Lexer {
 
     //get next token
     private TokenType nextToken() {
-        if (index == sources.length&&flag){
-            flag = false;
-            System.out.println(TokenType.EOF);
-            builder.append("EOF\n");
-            return TokenType.EOF;
+        if (index >= sources.length) {
+            if (flag) {
+                flag = false;
+                token = TokenType.EOF;
+                tokenvalue = "";
+                if (trace.isEnabled(TraceLevel.STEPS)) trace.trace(TokenType.EOF.toString());
+            }
+            return token;
         }
-        else if(flag==false) return null;
-        Pattern pattern = Pattern.compile(PATTERNSTRING);
-        Matcher matcher;
         char value = sources[index];
-        StringBuilder temp = new StringBuilder();
-        setType(value);
-        if (token == TokenType.LCID) {
-            do {
-                temp.append(sources[index]);
-                matcher = pattern.matcher(temp);
+        switch (classOf(value)) {
+            case SINGLE:
+                token = SINGLES[value];
+                index++;
+                break;
+            case LOWER:
+                int start = index;
+                index++;
+                while (index < sources.length && isLetter(sources[index])) {
+                    index++;
+                }
+                setMyValue(source.substring(start, index));
+                break;
+            default:
+                //blank or any character that starts no token
+                token = null;
+                tokenvalue = "";
                 index++;
-            } while (matcher.matches());
-            index = index - 2;
-            temp.deleteCharAt(temp.length() - 1);
-            setMyValue(temp.toString());
-            LCID = temp.toString();
-        }
-        index++;
-        if(token != null) {
-            System.out.println(token);
-            builder.append(token.toString()+"\n");
         }
+        if (token != null && trace.isEnabled(TraceLevel.STEPS)) trace.trace(token.toString());
         return token;
     }
 
@@ -116,9 +134,8 @@ public class Lexer {
     }
     // lexer's toString.
     private void translate() {
-        while (index < sources.length) {
+        while (flag) {
             nextToken();
         }
-        System.out.println("EOF");
     }
 }
@@ -0,0 +1,162 @@
+package cn.seecoder;
+
+/**
+ * Evaluates with the same strategy as Interpreter.evalAST on a locally nameless representation.
+ *
+ * Inside the engine a variable bound in the term is a De Bruijn index, and a variable bound outside it
+ * is an atom: the level of its binder, counted from the root. Evaluation only ever works on locally
+ * closed terms, where every index is bound inside the term, so an argument has no dangling index and a
+ * beta step just puts it in place of the index of its binder. Neither the argument nor the body is ever
+ * renumbered, there is no shift at all.
+ *
+ * Going under a lambda opens its body with a fresh atom for the parameter and closes the normal form
+ * of the body over that atom again. Both passes skip subterms without the index or atom they look for,
+ * from counts cached on every node. The term is converted back to indices once, at the end.
+ */
+public class LocallyNamelessEvaluator implements Evaluator {
+
+    private static final int APP = 0;
+    private static final int LAM = 1;
+    private static final int BOUND = 2;  // index is the De Bruijn index
+    private static final int ATOM = 3;   // index is the level of the binder, see atom()
+
+    private static final class Term {
+        final int kind;
+        final int index;
+        final Identifier name;  // the parameter of a LAM, the Identifier a variable comes from
+        final Term lhs;         // function, or body of a LAM
+        final Term rhs;
+        final int maxBound;     // largest index bound outside the term, -1 if it is locally closed
+        final int maxAtom;      // largest atom level in the term, -1 if none is at least 0
+
+        Term(int kind, int index, Identifier name, Term lhs, Term rhs) {
+            this.kind = kind;
+            this.index = index;
+            this.name = name;
+            this.lhs = lhs;
+            this.rhs = rhs;
+            if (kind == APP) {
+                maxBound = Math.max(lhs.maxBound, rhs.maxBound);
+                maxAtom = Math.max(lhs.maxAtom, rhs.maxAtom);
+            } else if (kind == LAM) {
+                maxBound = Math.max(lhs.maxBound - 1, -1);
+                maxAtom = lhs.maxAtom;
+            } else {
+                maxBound = kind == BOUND ? index : -1;
+                maxAtom = kind == ATOM ? Math.max(index, -1) : -1;
+            }
+        }
+    }
+
+    private final EvalStats stats = new EvalStats();
+
+    /**
+     * @return beta steps of every evaluate() so far
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public AST evaluate(AST ast) {
+        return toAST(eval(fromAST(ast, 0), 0), 0);
+    }
+
+    /**
+     * Atom level of a variable bound outside the evaluated term: -1 stays the free name it is, the
+     * index j seen from the outside of the term becomes -2 - j, below the levels of the binders.
+     */
+    private static int atom(int outside) {
+        return outside < 0 ? -1 : -2 - outside;
+    }
+
+    private static Term fromAST(AST ast, int binders) {
+        if (ast instanceof Application) {
+            return new Term(APP, 0, null, fromAST(((Application) ast).lhs, binders), fromAST(((Application) ast).rhs, binders));
+        }
+        if (ast instanceof Abstraction) {
+            return new Term(LAM, 0, ((Abstraction) ast).param, fromAST(((Abstraction) ast).body, binders + 1), null);
+        }
+        Identifier identifier = (Identifier) ast;
+        int index = identifier.DBindex;
+        if (index >= 0 && index < binders) return new Term(BOUND, index, identifier, null, null);
+        return new Term(ATOM, atom(index < 0 ? -1 : index - binders), identifier, null, null);
+    }
+
+    private static AST toAST(Term term, int binders) {
+        switch (term.kind) {
+            case APP:
+                return new Application(toAST(term.lhs, binders), toAST(term.rhs, binders));
+            case LAM:
+                return new Abstraction(term.name, toAST(term.lhs, binders + 1));
+            case BOUND:
+                return new Identifier(term.name.name, term.index);
+            default:
+                return term.index == -1 ? term.name : new Identifier(term.name.name, -2 - term.index + binders);
+        }
+    }
+
+    /**
+     * @return term itself if lhs and rhs are its children, otherwise a new node of them
+     */
+    private static Term rebuild(Term term, Term lhs, Term rhs) {
+        return lhs == term.lhs && rhs == term.rhs ? term : new Term(term.kind, term.index, term.name, lhs, rhs);
+    }
+
+    /**
+     * Replaces index k, seen from term, by the locally closed value.
+     */
+    private static Term open(Term term, int k, Term value) {
+        if (term.maxBound < k) return term;
+        switch (term.kind) {
+            case APP:
+                return rebuild(term, open(term.lhs, k, value), open(term.rhs, k, value));
+            case LAM:
+                return rebuild(term, open(term.lhs, k + 1, value), null);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Replaces atom level by index k, seen from term. No atom above level is left in term.
+     */
+    private static Term close(Term term, int level, int k) {
+        if (term.maxAtom < level) return term;
+        switch (term.kind) {
+            case APP:
+                return rebuild(term, close(term.lhs, level, k), close(term.rhs, level, k));
+            case LAM:
+                return rebuild(term, close(term.lhs, level, k + 1), null);
+            default:
+                return new Term(BOUND, k, term.name, null, null);
+        }
+    }
+
+    /**
+     * Normalizes the locally closed term; atoms of levels 0 to depth - 1 are the enclosing binders.
+     */
+    private Term eval(Term term, int depth) {
+        while (true) {
+            if (term.kind == APP) {
+                Term lhs = term.lhs;
+                Term rhs = term.rhs;
+                if (lhs.kind == LAM) {
+                    stats.betaReductions++;
+                    term = open(lhs.lhs, 0, rhs);
+                } else if (lhs.kind == APP) {
+                    lhs = eval(lhs, depth);
+                    if (rhs.kind == APP || rhs.kind == LAM) rhs = eval(rhs, depth);
+                    term = rebuild(term, lhs, rhs);
+                    if (lhs.kind != LAM) return term;
+                } else {
+                    return rebuild(term, lhs, eval(rhs, depth));
+                }
+            } else if (term.kind == LAM) {
+                Term body = open(term.lhs, 0, new Term(ATOM, depth, term.name, null, null));
+                return rebuild(term, close(eval(body, depth + 1), depth, 0), null);
+            } else {
+                return term;
+            }
+        }
+    }
+}
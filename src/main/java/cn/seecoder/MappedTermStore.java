@@ -0,0 +1,151 @@
+package cn.seecoder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * {@link TermStore} in a memory-mapped file, outside the Java heap. A node is a packed 16 byte record
+ * (tag, left, right, maxFree as ints) at 16 * handle in the file, which is mapped in chunks as it
+ * grows. The operating system keeps the hot pages in memory and writes the others back to the file
+ * through the page cache, so a term can be much larger than -Xmx; only the name table stays on the
+ * heap.
+ *
+ * Not thread-safe.
+ */
+public class MappedTermStore implements TermStore, Closeable {
+
+    private static final int RECORD = 16;
+    private static final int CHUNK_SHIFT = 22;  // 4M nodes, 64 MB per mapped chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final File file;
+    private final boolean temporary;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final ArrayList<MappedByteBuffer> chunks = new ArrayList<>();
+    private final Names names = new Names();
+    private int size;
+
+    /**
+     * Stores nodes in a temporary file, deleted by close(), or when the JVM exits if close() is never
+     * called.
+     */
+    public MappedTermStore() throws IOException {
+        this(temporaryFile(), true);
+    }
+
+    private static File temporaryFile() throws IOException {
+        File file = File.createTempFile("terms", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * @param file file the nodes are mapped to; it is overwritten and left in place by close()
+     */
+    public MappedTermStore(File file) throws IOException {
+        this(file, false);
+    }
+
+    private MappedTermStore(File file, boolean temporary) throws IOException {
+        this.file = file;
+        this.temporary = temporary;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+    /**
+     * @return bytes of the file the nodes allocated so far take
+     */
+    public long bytes() {
+        return (long) size * RECORD;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    private MappedByteBuffer chunk(int node) {
+        return chunks.get(node >>> CHUNK_SHIFT);
+    }
+
+    private static int offset(int node) {
+        return (node & CHUNK_MASK) * RECORD;
+    }
+
+    public byte tag(int node) {
+        return (byte) chunk(node).getInt(offset(node));
+    }
+
+    public int left(int node) {
+        return chunk(node).getInt(offset(node) + 4);
+    }
+
+    public int right(int node) {
+        return chunk(node).getInt(offset(node) + 8);
+    }
+
+    public int maxFree(int node) {
+        return chunk(node).getInt(offset(node) + 12);
+    }
+
+    public String name(int id) {
+        return names.name(id);
+    }
+
+    public int nameId(String name) {
+        return names.id(name);
+    }
+
+    private int allocate(byte tag, int l, int r, int free) {
+        if (size == Integer.MAX_VALUE) throw new IllegalStateException("term store is full");
+        if (size >>> CHUNK_SHIFT == chunks.size()) {
+            long chunkBytes = (long) RECORD << CHUNK_SHIFT;
+            try {
+                chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * chunkBytes, chunkBytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        MappedByteBuffer chunk = chunk(size);
+        int offset = offset(size);
+        chunk.putInt(offset, tag);
+        chunk.putInt(offset + 4, l);
+        chunk.putInt(offset + 8, r);
+        chunk.putInt(offset + 12, free);
+        return size++;
+    }
+
+    public int var(int name, int index) {
+        return allocate(VAR, name, index, index);
+    }
+
+    public int lam(int name, int body) {
+        return allocate(LAM, body, name, Math.max(maxFree(body) - 1, -1));
+    }
+
+    public int app(int lhs, int rhs) {
+        return allocate(APP, lhs, rhs, Math.max(maxFree(lhs), maxFree(rhs)));
+    }
+
+    /**
+     * Closes the file, and deletes it if it is temporary. The mapped chunks are released once they are
+     * garbage collected; the store must not be used any more.
+     */
+    public void close() throws IOException {
+        chunks.clear();
+        channel.close();
+        raf.close();
+        if (temporary && !file.delete()) file.deleteOnExit();
+    }
+}
@@ -0,0 +1,25 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The distinct names of a {@link TermStore}, numbered in order of first use.
+ */
+class Names {
+    private String[] names = new String[16];
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        if (ids.size() == names.length) names = Arrays.copyOf(names, names.length * 2);
+        names[ids.size()] = name;
+        ids.put(name, ids.size());
+        return ids.size() - 1;
+    }
+}
@@ -0,0 +1,113 @@
+package cn.seecoder;
+
+import cn.seecoder.Readback.Neutral;
+import cn.seecoder.Readback.Value;
+
+import java.util.function.Function;
+
+/**
+ * Normalization by evaluation.
+ *
+ * A term is evaluated into a semantic domain where lambdas are host closures ({@link Function}s from
+ * argument to value) and stuck terms are neutral: a variable applied to arguments. Beta reduction is
+ * just calling the Java function. {@link Readback} applies every closure to a fresh neutral variable and
+ * turns the values back into Abstraction/Application/Identifier with De Bruijn indices counted from the
+ * variable levels.
+ *
+ * Arguments are passed as memoized {@link Lazy} values, so arguments a lambda ignores are never
+ * evaluated and the result is the normal form Interpreter.eval() computes.
+ */
+public class NbeEvaluator implements Evaluator {
+
+    private static final class Closure extends Value {
+        final Identifier param;
+        final Function<Lazy, Value> body;
+
+        Closure(Identifier param, Function<Lazy, Value> body) {
+            this.param = param;
+            this.body = body;
+        }
+    }
+
+    /**
+     * An argument, evaluated on first use.
+     */
+    private final class Lazy {
+        private AST term;
+        private Env env;
+        private Value value;
+
+        Lazy(AST term, Env env) {
+            this.term = term;
+            this.env = env;
+        }
+
+        Lazy(Value value) {
+            this.value = value;
+        }
+
+        Value force() {
+            if (value == null) {
+                value = eval(term, env);
+                term = null;
+                env = null;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Persistent environment, entry 0 is De Bruijn index 0.
+     */
+    private static final class Env {
+        final Lazy value;
+        final Env next;
+        final int size;
+
+        Env(Lazy value, Env next) {
+            this.value = value;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+        }
+    }
+
+    private final Readback<Lazy> readback = new Readback<Lazy>(new Lazy[0]) {
+        Value force(Lazy arg) {
+            return arg.force();
+        }
+
+        Identifier param(Value lambda) {
+            return ((Closure) lambda).param;
+        }
+
+        Value instantiate(Value lambda, Neutral<Lazy> variable) {
+            return ((Closure) lambda).body.apply(new Lazy(variable));
+        }
+    };
+
+    public AST evaluate(AST ast) {
+        return readback.readback(eval(ast, null), 0);
+    }
+
+    private Value eval(AST term, Env env) {
+        if (term instanceof Application) {
+            return apply(eval(((Application) term).lhs, env), new Lazy(((Application) term).rhs, env));
+        }
+        if (term instanceof Abstraction) {
+            final AST body = ((Abstraction) term).body;
+            return new Closure(((Abstraction) term).param, arg -> eval(body, new Env(arg, env)));
+        }
+        Identifier identifier = (Identifier) term;
+        int index = identifier.DBindex;
+        int size = env == null ? 0 : env.size;
+        if (index < 0 || index >= size) return readback.free(identifier, size);
+        Env entry = env;
+        for (int i = 0; i < index; i++) entry = entry.next;
+        return entry.value.force();
+    }
+
+    private Value apply(Value function, Lazy arg) {
+        if (function instanceof Closure) return ((Closure) function).body.apply(arg);
+        return readback.neutral(function).apply(arg);
+    }
+}
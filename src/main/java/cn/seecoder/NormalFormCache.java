@@ -0,0 +1,212 @@
+package cn.seecoder;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Normal forms of closed terms, for an evaluator to look up before reducing a term it has seen before.
+ *
+ * A term is keyed by its De Bruijn structure: the cached hash of {@link AST} and a structural
+ * comparison that ignores binder names, so alpha-equivalent terms share one entry. Free names (index -1)
+ * are compared by name. The normal form given back is the one first computed, with the names of the
+ * term it came from.
+ *
+ * The cache is bounded in entries and in weight, the total size of the cached terms and normal forms,
+ * and drops the least recently used entries beyond either bound. Normal forms are held by soft
+ * references, so under memory pressure the garbage collector may clear them; such an entry is removed
+ * on the next access. {@link #getHits()}, {@link #getMisses()}, {@link #getEvictions()} and
+ * {@link #getCollected()} count what happened.
+ *
+ * Not thread-safe.
+ */
+public class NormalFormCache {
+
+    /**
+     * A term compared by structure.
+     */
+    private static final class Key {
+        final AST term;
+
+        Key(AST term) {
+            this.term = term;
+        }
+
+        public int hashCode() {
+            return term.hash;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && alphaEquals(term, ((Key) other).term);
+        }
+    }
+
+    /**
+     * A normal form, cleared by the garbage collector when memory runs short.
+     */
+    private static final class Entry extends SoftReference<AST> {
+        final Key key;
+        final long weight;
+
+        Entry(Key key, AST normalForm, long weight, ReferenceQueue<AST> queue) {
+            super(normalForm, queue);
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    //access order: the first entry is the least recently used
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<AST> cleared = new ReferenceQueue<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long collected;
+
+    /**
+     * @param maxEntries largest number of entries kept
+     * @param maxWeight  largest total size, in nodes, of the terms and normal forms kept
+     */
+    public NormalFormCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) throw new IllegalArgumentException("cache bounds must be positive");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return the cached normal form of a term alpha-equivalent to term, or null
+     */
+    public AST get(AST term) {
+        expunge();
+        Entry entry = entries.get(new Key(term));
+        AST normalForm = entry == null ? null : entry.get();
+        if (normalForm == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return normalForm;
+    }
+
+    /**
+     * Caches normalForm as the normal form of term, which must be closed, and evicts the least recently
+     * used entries that no longer fit. A pair heavier than the whole cache is not kept.
+     */
+    public void put(AST term, AST normalForm) {
+        expunge();
+        long w = term.size + normalForm.size;
+        if (w > maxWeight) return;
+        Key key = new Key(term);
+        Entry previous = entries.put(key, new Entry(key, normalForm, w, cleared));
+        if (previous != null) weight -= previous.weight;
+        weight += w;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            Entry entry = eldest.next();
+            eldest.remove();
+            weight -= entry.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes the entries whose normal form was cleared by the garbage collector.
+     */
+    private void expunge() {
+        Entry entry;
+        while ((entry = (Entry) cleared.poll()) != null) {
+            //the key may have been evicted or given a new entry since
+            if (entries.remove(entry.key, entry)) {
+                weight -= entry.weight;
+                collected++;
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total size, in nodes, of the terms and normal forms cached
+     */
+    public long weight() {
+        return weight;
+    }
+
+    public void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of lookups that found a normal form
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups that found none
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries dropped to stay within the bounds
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of entries dropped because the garbage collector cleared their normal form
+     */
+    public long getCollected() {
+        return collected;
+    }
+
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", collected: " + collected
+                + ", entries: " + entries.size() + ", weight: " + weight;
+    }
+
+    /**
+     * @return whether a and b are the same De Bruijn term, binder names ignored
+     */
+    static boolean alphaEquals(AST a, AST b) {
+        ArrayDeque<AST> pending = new ArrayDeque<>();
+        pending.push(a);
+        pending.push(b);
+        while (!pending.isEmpty()) {
+            AST x = pending.pop();
+            AST y = pending.pop();
+            //shared subterms, as under hash-consing, are compared once
+            if (x == y) continue;
+            if (x.hash != y.hash || x.size != y.size) return false;
+            if (x instanceof Application) {
+                if (!(y instanceof Application)) return false;
+                pending.push(((Application) x).lhs);
+                pending.push(((Application) y).lhs);
+                pending.push(((Application) x).rhs);
+                pending.push(((Application) y).rhs);
+            } else if (x instanceof Abstraction) {
+                if (!(y instanceof Abstraction)) return false;
+                pending.push(((Abstraction) x).body);
+                pending.push(((Abstraction) y).body);
+            } else {
+                if (!(y instanceof Identifier)) return false;
+                int index = ((Identifier) x).DBindex;
+                if (index != ((Identifier) y).DBindex) return false;
+                if (index < 0 && !((Identifier) x).name.equals(((Identifier) y).name)) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package cn.seecoder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The strategy of Interpreter with the two sides of a stuck application reduced in parallel.
+ *
+ * When Interpreter meets an application whose function is an application and whose argument is not a
+ * variable, it normalizes the function and then the argument, which are independent. Here the
+ * argument becomes a {@link RecursiveTask} that another thread of the pool can take while this one
+ * goes on with the function, so a wide normal form, like a variable applied to many large arguments,
+ * is normalized on as many threads as it has branches. Only subterms of at least threshold nodes are
+ * forked; smaller ones are not worth a task and are reduced in turn, as are the bodies of binders,
+ * which have nothing to run beside them. Beta steps are the same as Interpreter's.
+ *
+ * Every task runs its own Interpreter, which counts in its own {@link EvalStats}; the counters are
+ * added up when the task is joined. Tasks do not trace.
+ */
+public class ParallelEvaluator implements Evaluator {
+
+    /**
+     * A subterm normalized on another thread, with the counters of its Interpreter.
+     */
+    private final class Normalize extends RecursiveTask<AST> {
+        private static final long serialVersionUID = 1L;
+
+        private final AST ast;
+        private final EvalContext context = new EvalContext();
+
+        Normalize(AST ast) {
+            this.ast = ast;
+        }
+
+        protected AST compute() {
+            return new Interpreter(context, ParallelEvaluator.this).evaluate(ast);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final long threshold;
+    private final EvalStats stats = new EvalStats();
+
+    /**
+     * Reduces on the common ForkJoinPool, forking subterms of 64 nodes or more.
+     */
+    public ParallelEvaluator() {
+        this(ForkJoinPool.commonPool(), 64);
+    }
+
+    /**
+     * @param threshold size, in nodes, both sides of an application must have for the argument to be
+     *                  reduced by a task of its own
+     */
+    public ParallelEvaluator(ForkJoinPool pool, long threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return a copy of the counters of every evaluation finished so far, all tasks included; one still
+     *         running on another thread is added when it returns
+     */
+    public EvalStats getStats() {
+        EvalStats copy = new EvalStats();
+        synchronized (stats) {
+            copy.add(stats);
+        }
+        return copy;
+    }
+
+    public AST evaluate(AST ast) {
+        Normalize root = new Normalize(ast);
+        AST result = pool.invoke(root);
+        //evaluate() may be called from several threads at once
+        synchronized (stats) {
+            stats.add(root.context.getStats());
+        }
+        return result;
+    }
+
+    /**
+     * @return the task normalizing rhs, already forked, or null if lhs and rhs are too small to be worth it
+     */
+    ForkJoinTask<AST> fork(AST lhs, AST rhs) {
+        if (lhs.size < threshold || rhs.size < threshold) return null;
+        return new Normalize(rhs).fork();
+    }
+
+    /**
+     * @return the normal form computed by task, once it is done, after adding its counters to stats
+     */
+    AST join(ForkJoinTask<AST> task, EvalStats stats) {
+        AST result = task.join();
+        stats.add(((Normalize) task).context.getStats());
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package cn.seecoder;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 /**
  *
@@ -8,76 +9,225 @@ import java.util.ArrayList;
  * Application ::= Application Atom| Atom
  * Atom ::= LPAREN term RPAREN| LCID
  *
+ * The grammar is parsed shift-reduce style without recursion: every open lambda and parenthesis is a
+ * {@link Frame} on an explicit stack, so nesting depth costs heap instead of Java stack and parsing is
+ * linear in the source length.
+ *
  * @author P君
  */
 
 public class Parser {
     Lexer lexer;
+    private final TraceSink trace;
+    private final TermBuilder<AST> terms;
+
+    /**
+     * Builds a plain tree, a new node for every occurrence.
+     */
+    private static final TermBuilder<AST> TREE = new TermBuilder<AST>() {
+        public AST identifier(String name, int index) {
+            return new Identifier(name, index);
+        }
+
+        public AST abstraction(String param, AST body) {
+            return new Abstraction(new Identifier(param, 0), body);
+        }
+
+        public AST application(AST lhs, AST rhs) {
+            return new Application(lhs, rhs);
+        }
+    };
+
+    /**
+     * An open lambda (param != null) or parenthesis, with the application it interrupted.
+     */
+    private static final class Frame<T> {
+        final String param;
+        final T outer;
+
+        Frame(String param, T outer) {
+            this.param = param;
+            this.outer = outer;
+        }
+    }
 
 
     public Parser(Lexer l) {
+        this(l, TraceSink.OFF);
+    }
+
+    /**
+     * @param trace receives the parsed term at {@link TraceLevel#SUMMARY}
+     */
+    public Parser(Lexer l, TraceSink trace) {
+        this(l, trace, TREE);
+    }
+
+    /**
+     * Builds every node through terms, so identical subterms of the source become one shared node
+     * and the parsed term is a DAG.
+     *
+     * @param terms interning table, may be shared by several parsers; null to build a plain tree, which
+     *              must then be cast to HashCons to pick this constructor, or use Parser(Lexer, TraceSink)
+     */
+    public Parser(Lexer l, TraceSink trace, HashCons terms) {
+        this(l, trace, terms == null ? TREE : terms);
+    }
+
+    /**
+     * Builds every node through a table shared by parsers on other threads, so that their terms share
+     * the nodes they have in common as well.
+     *
+     * @param terms interning table; null, cast to ConcurrentHashCons, to build a plain tree
+     */
+    public Parser(Lexer l, TraceSink trace, ConcurrentHashCons terms) {
+        this(l, trace, terms == null ? TREE : terms);
+    }
+
+    private Parser(Lexer l, TraceSink trace, TermBuilder<AST> terms) {
         lexer = l;
+        this.trace = trace;
+        this.terms = terms;
+    }
+
+    /**
+     * @return whether the parsed term shares nodes through a {@link HashCons} or a {@link ConcurrentHashCons}
+     */
+    public boolean isHashConsing() {
+        return terms != TREE;
     }
 
     public AST parse() {
-        AST ast = term(new ArrayList<>());
+        AST ast = term(new Scope(), terms);
+        if (trace.isEnabled(TraceLevel.SUMMARY)) trace.trace("Before interpreter De Bruijn: " + ast.toString());
         return ast;
     }
 
-    private AST term(ArrayList<String> ctx) {
-        if (lexer.match(TokenType.LAMBDA)) {
-            String param = lexer.tokenvalue;
-            lexer.skip(TokenType.LCID);
-            lexer.match(TokenType.DOT);
-            ctx.add(0,param);
-            String paramValue = ""+ctx.indexOf(param);
-            AST body = term(ctx);
-            ctx.remove(ctx.indexOf(param));
-            return new Abstraction(new Identifier(param, paramValue),body);
-        } else {
-            return application(ctx);
-        }
+    /**
+     * Parses into a term store instead of building AST nodes.
+     *
+     * @return handle of the term in store, -1 for an empty source
+     */
+    public int parse(TermStore store) {
+        int term = term(new Scope(), store);
+        if (term < 0) return -1;
+        if (trace.isEnabled(TraceLevel.SUMMARY)) trace.trace("Before interpreter De Bruijn: " + store.toAST(term).toString());
+        return term;
     }
 
     /**
      * Application ::= Application Atom| Atom
-     * P.S: We needn't take more care of whether Left Recursion will cause unstoppable Recursion, because in the atom(),
-     * We can return NULL that pass to a new Application, and in the create methon in Application, We will know that whether
-     * Application.right is NULL. And we if right isn't null, we will do this:
+     * The application of the innermost open frame is kept in current and grows to the left:
      *
-     * this.Left <--- new Application(this.Left,this.right)
-     * this.right <--- atom();
+     * current <--- new Application(current, atom)
      *
-     * This is a powerful way to pass all lexer.
+     * A lambda or parenthesis pushes current and starts a new one; closing it turns current into an atom
+     * of the application it interrupted. A lambda body reaches as far right as possible, so lambdas are
+     * only closed by the RPAREN of their enclosing parenthesis or by the end of the source.
      */
-
-    private AST application(ArrayList<String> ctx) {
-        Application application = new Application();
-        application.setLhs(atom(ctx));
-        application.setRhs(atom(ctx));
+    private <T> T term(Scope ctx, TermBuilder<T> nodes) {
+        ArrayDeque<Frame<T>> frames = new ArrayDeque<>();
+        T current = null;
         while (true) {
-            if (application.getRhs() == null) return application.getLhs();
-            else {
-                application.setLhs(new Application(application.getLhs(), application.getRhs()));
-                application.setRhs(atom(ctx));
+            //处理（x y）中间的空格
+            while (lexer.match(null)) ;
+            if (lexer.match(TokenType.LAMBDA)) {
+                while (lexer.match(null)) ;
+                String param = lexer.tokenvalue;
+                lexer.skip(TokenType.LCID);
+                while (lexer.match(null)) ;
+                lexer.match(TokenType.DOT);
+                ctx.bind(param);
+                frames.push(new Frame<>(param, current));
+                current = null;
+            } else if (lexer.match(TokenType.LPAREN)) {
+                frames.push(new Frame<>(null, current));
+                current = null;
+            } else if (lexer.next(TokenType.LCID)) {
+                String tvalue = lexer.tokenvalue;
+                lexer.skip(TokenType.LCID);
+                current = apply(nodes, current, nodes.identifier(tvalue, ctx.indexOf(tvalue)));
+            } else {
+                //RPAREN closes the open lambdas and the innermost parenthesis,
+                //EOF or any other token ends the term and closes every open frame
+                boolean rparen = lexer.match(TokenType.RPAREN);
+                boolean closed = false;
+                while (!frames.isEmpty() && !closed) {
+                    Frame<T> frame = frames.pop();
+                    if (frame.param != null) {
+                        ctx.unbind(frame.param);
+                        current = apply(nodes, frame.outer, nodes.abstraction(frame.param, current));
+                    } else {
+                        current = apply(nodes, frame.outer, current);
+                        closed = rparen;
+                    }
+                }
+                if (!closed) return current;
             }
         }
     }
 
-    private AST atom(ArrayList<String> ctx) {
-        if (lexer.match(TokenType.LPAREN)) {
-            AST Term = term(ctx);
-            if(lexer.match(TokenType.RPAREN))return Term;
-        }
-        else if (lexer.next(TokenType.LCID)) {
-            String tvalue = lexer.tokenvalue;
-            lexer.skip(TokenType.LCID);
-            return new Identifier(tvalue, String.valueOf(ctx.indexOf(tvalue)));
-        }
-        //处理（x y）中间的空格
-        else if (lexer.match(null)) {
-            return atom(ctx);
+    private static <T> T apply(TermBuilder<T> nodes, T lhs, T rhs) {
+        return lhs == null ? rhs : nodes.application(lhs, rhs);
+    }
+
+    /**
+     * term(Scope, TermBuilder) for int handles, with the frames in two arrays instead of Frame objects:
+     * the parameter of every open lambda (null for a parenthesis) and the application it interrupted
+     * (-1 for none). Nothing is allocated but the nodes in the builder and the growth of the arrays.
+     *
+     * @return handle of the term, -1 for an empty source
+     */
+    private int term(Scope ctx, IntTermBuilder nodes) {
+        String[] params = new String[16];
+        int[] outers = new int[16];
+        int top = 0;
+        int current = -1;
+        while (true) {
+            //处理（x y）中间的空格
+            while (lexer.match(null)) ;
+            boolean lambda = lexer.match(TokenType.LAMBDA);
+            if (lambda || lexer.match(TokenType.LPAREN)) {
+                String param = null;
+                if (lambda) {
+                    while (lexer.match(null)) ;
+                    param = lexer.tokenvalue;
+                    lexer.skip(TokenType.LCID);
+                    while (lexer.match(null)) ;
+                    lexer.match(TokenType.DOT);
+                    ctx.bind(param);
+                }
+                if (top == params.length) {
+                    params = Arrays.copyOf(params, top * 2);
+                    outers = Arrays.copyOf(outers, top * 2);
+                }
+                params[top] = param;
+                outers[top++] = current;
+                current = -1;
+            } else if (lexer.next(TokenType.LCID)) {
+                String tvalue = lexer.tokenvalue;
+                lexer.skip(TokenType.LCID);
+                current = apply(nodes, current, nodes.identifier(tvalue, ctx.indexOf(tvalue)));
+            } else {
+                boolean rparen = lexer.match(TokenType.RPAREN);
+                boolean closed = false;
+                while (top > 0 && !closed) {
+                    String param = params[--top];
+                    if (param != null) {
+                        ctx.unbind(param);
+                        current = apply(nodes, outers[top], nodes.abstraction(param, current));
+                    } else {
+                        current = apply(nodes, outers[top], current);
+                        closed = rparen;
+                    }
+                    params[top] = null;
+                }
+                if (!closed) return current;
+            }
         }
-        return null;
     }
-}
\ No newline at end of file
+
+    private static int apply(IntTermBuilder nodes, int lhs, int rhs) {
+        return lhs < 0 ? rhs : nodes.application(lhs, rhs);
+    }
+}
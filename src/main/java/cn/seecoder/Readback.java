@@ -0,0 +1,108 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+
+/**
+ * Readback of the values of an environment evaluator, {@link LazyEvaluator} or {@link NbeEvaluator},
+ * to the strong normal form.
+ *
+ * A value is a lambda of the evaluator or a {@link Neutral} term. Readback applies every lambda to a
+ * fresh neutral variable, bound at the number of lambdas read back around it, and reads back the
+ * arguments of every neutral term; the De Bruijn index of a variable is computed from its level here
+ * only.
+ *
+ * @param <A> an argument of the evaluator, evaluated on demand by {@link #force(Object)}
+ */
+abstract class Readback<A> {
+
+    /**
+     * A weak head normal form: a lambda of the evaluator, or a neutral term.
+     */
+    static abstract class Value {
+    }
+
+    /**
+     * A variable applied to args. The variable is bound by readback at level, or free (level -1): then
+     * head is the Identifier to read back, with an index counted from the outside of the evaluated term.
+     */
+    static final class Neutral<A> extends Value {
+        final int level;
+        final Identifier head;
+        final A[] args;
+
+        Neutral(int level, Identifier head, A[] args) {
+            this.level = level;
+            this.head = head;
+            this.args = args;
+        }
+
+        /**
+         * @return this term applied to one more argument
+         */
+        Neutral<A> apply(A arg) {
+            A[] more = Arrays.copyOf(args, args.length + 1);
+            more[args.length] = arg;
+            return new Neutral<>(level, head, more);
+        }
+    }
+
+    private final A[] noArgs;
+
+    /**
+     * @param noArgs an empty array of arguments, the arguments of a variable alone
+     */
+    Readback(A[] noArgs) {
+        this.noArgs = noArgs;
+    }
+
+    /**
+     * @param identifier variable of the evaluated term, not bound by its environment of size binders
+     * @return identifier as a free variable with no arguments, its index counted from the outside of
+     *         the evaluated term
+     */
+    final Neutral<A> free(Identifier identifier, int size) {
+        if (identifier.DBindex < 0) return new Neutral<>(-1, identifier, noArgs);
+        return new Neutral<>(-1, new Identifier(identifier.name, identifier.DBindex - size), noArgs);
+    }
+
+    /**
+     * @return value, which is not a lambda, as the neutral term it is
+     */
+    @SuppressWarnings("unchecked")
+    final Neutral<A> neutral(Value value) {
+        return (Neutral<A>) value;
+    }
+
+    /**
+     * @return the value of arg
+     */
+    abstract Value force(A arg);
+
+    /**
+     * @return the parameter of lambda, a value that is not a Neutral
+     */
+    abstract Identifier param(Value lambda);
+
+    /**
+     * @return the value of the body of lambda with its parameter bound to variable
+     */
+    abstract Value instantiate(Value lambda, Neutral<A> variable);
+
+    /**
+     * @return the normal form of value under depth lambdas
+     */
+    final AST readback(Value value, int depth) {
+        if (!(value instanceof Neutral)) {
+            Identifier param = param(value);
+            Value body = instantiate(value, new Neutral<>(depth, param, noArgs));
+            return new Abstraction(param, readback(body, depth + 1));
+        }
+        Neutral<A> neutral = neutral(value);
+        AST head;
+        if (neutral.level >= 0) head = new Identifier(neutral.head.name, depth - 1 - neutral.level);
+        else if (neutral.head.DBindex < 0) head = neutral.head;
+        else head = new Identifier(neutral.head.name, neutral.head.DBindex + depth);
+        for (A arg : neutral.args) head = new Application(head, readback(force(arg), depth));
+        return head;
+    }
+}
@@ -0,0 +1,48 @@
+package cn.seecoder;
+
+import java.util.HashMap;
+
+/**
+ * The binders enclosing the term being parsed.
+ *
+ * Every name maps to the chain of its bindings, innermost first, so binding, unbinding and
+ * looking up the De Bruijn index of a name are O(1) whatever the binder depth, and an inner
+ * binder shadows an outer one of the same name.
+ */
+class Scope {
+
+    private static class Binding {
+        final int level;        // number of binders outside this one
+        final Binding shadowed; // outer binding of the same name
+
+        Binding(int level, Binding shadowed) {
+            this.level = level;
+            this.shadowed = shadowed;
+        }
+    }
+
+    private final HashMap<String, Binding> bindings = new HashMap<>();
+    private int depth;
+
+    void bind(String name) {
+        bindings.put(name, new Binding(depth++, bindings.get(name)));
+    }
+
+    /**
+     * Removes the innermost binding of name, which must be the innermost binder of the scope.
+     */
+    void unbind(String name) {
+        Binding binding = bindings.get(name);
+        if (binding.shadowed == null) bindings.remove(name);
+        else bindings.put(name, binding.shadowed);
+        depth--;
+    }
+
+    /**
+     * @return the De Bruijn index of name, -1 if name is free
+     */
+    int indexOf(String name) {
+        Binding binding = bindings.get(name);
+        return binding == null ? -1 : depth - 1 - binding.level;
+    }
+}
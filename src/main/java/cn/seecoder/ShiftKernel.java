@@ -0,0 +1,82 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+
+/**
+ * Bulk De Bruijn shifting on the packed codes of a {@link Tape}.
+ *
+ * Interpreter.shift(by, node, from) adds by to every variable whose index is at least from plus the
+ * number of binders above it. On a tape the binder depth of every slot can be computed once, in a
+ * cutoff array: from + depth for a VAR slot, CLOSED for an APP or LAM slot. Shifting then no longer
+ * depends on the tree structure, and is the same branch-free operation on every slot:
+ *
+ * code += (by << 2) if (code >> 2) >= cutoff
+ *
+ * so a term put under binders many times, like the argument of a beta step, gets its cutoffs once and
+ * every copy is shifted by a straight loop over two int arrays that the JIT compiles to SIMD
+ * instructions. {@link #shiftScalar} is the plain per-slot version.
+ */
+public final class ShiftKernel {
+
+    /**
+     * Cutoff of an APP or LAM slot: above every index, so such a slot is never changed.
+     */
+    static final int CLOSED = 1 << 30;
+
+    private ShiftKernel() {
+    }
+
+    /**
+     * @return the cutoff of every slot of the subterm [start, end) of tape, seen from a shift by from
+     */
+    public static int[] cutoffs(Tape tape, int start, int end, int from) {
+        int[] cutoffs = new int[end - start];
+        int[] open = new int[16];
+        int top = 0;
+        int depth = from;
+        for (int i = start; i < end; i++) {
+            int code = tape.codes[i];
+            int tag = Tape.tag(code);
+            if (tag != Tape.VAR) {
+                cutoffs[i - start] = CLOSED;
+                if (top == open.length) open = Arrays.copyOf(open, top * 2);
+                open[top++] = tag == Tape.APP ? 2 << 1 : 1 << 1 | 1;
+                if (tag == Tape.LAM) depth++;
+                continue;
+            }
+            cutoffs[i - start] = depth;
+            //the leaf completes its parent, which may complete its own parent and so on
+            while (top > 0) {
+                int remaining = (open[top - 1] >> 1) - 1;
+                if (remaining > 0) {
+                    open[top - 1] = remaining << 1 | (open[top - 1] & 1);
+                    break;
+                }
+                if ((open[--top] & 1) != 0) depth--;
+            }
+        }
+        return cutoffs;
+    }
+
+    /**
+     * Shifts by the n codes from offset on, codes[offset + k] with cutoffs[k]. No branch in the loop:
+     * the sign of index - cutoff becomes a mask for the increment.
+     */
+    public static void shift(int[] codes, int offset, int[] cutoffs, int n, int by) {
+        int delta = by << 2;
+        for (int k = 0; k < n; k++) {
+            int code = codes[offset + k];
+            codes[offset + k] = code + (delta & ~(((code >> 2) - cutoffs[k]) >> 31));
+        }
+    }
+
+    /**
+     * Same as {@link #shift}, testing every slot.
+     */
+    public static void shiftScalar(int[] codes, int offset, int[] cutoffs, int n, int by) {
+        for (int k = 0; k < n; k++) {
+            int code = codes[offset + k];
+            if (Tape.tag(code) == Tape.VAR && Tape.index(code) >= cutoffs[k]) codes[offset + k] = Tape.var(Tape.index(code) + by);
+        }
+    }
+}
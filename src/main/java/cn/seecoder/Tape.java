@@ -0,0 +1,128 @@
+package cn.seecoder;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A term linearized in preorder into one int array, as in Binary Lambda Calculus: APP is followed by the
+ * function and then the argument, LAM by its body, and a VAR slot carries its De Bruijn index. The code
+ * of a slot is its tag in the low two bits and the index (VAR only) in the others. The name of the
+ * variable or parameter of a slot is kept at the same position in a parallel array of name ids.
+ *
+ * Nothing else is stored: the extent of a subterm is found by scanning, every APP opens two pending
+ * subterms and every slot closes one.
+ */
+public class Tape {
+
+    public static final int APP = 0;
+    public static final int LAM = 1;
+    public static final int VAR = 2;
+
+    int[] codes;
+    int[] names;
+    int length;
+    final Names table;
+
+    public Tape(int capacity) {
+        this(capacity, new Names());
+    }
+
+    Tape(int capacity, Names table) {
+        codes = new int[Math.max(capacity, 16)];
+        names = new int[codes.length];
+        this.table = table;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public static int tag(int code) {
+        return code & 3;
+    }
+
+    /**
+     * @return De Bruijn index of a VAR code
+     */
+    public static int index(int code) {
+        return code >> 2;
+    }
+
+    static int var(int index) {
+        return index << 2 | VAR;
+    }
+
+    /**
+     * Makes room for n more slots.
+     */
+    void ensure(int n) {
+        if (length + n > codes.length) {
+            int capacity = Math.max(codes.length * 2, length + n);
+            codes = Arrays.copyOf(codes, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+    }
+
+    void put(int code, int name) {
+        ensure(1);
+        codes[length] = code;
+        names[length] = name;
+        length++;
+    }
+
+    /**
+     * @return the position after the subterm starting at start
+     */
+    int end(int start) {
+        int pending = 1;
+        int i = start;
+        while (pending > 0) {
+            int tag = codes[i++] & 3;
+            pending += tag == APP ? 1 : tag == LAM ? 0 : -1;
+        }
+        return i;
+    }
+
+    public static Tape fromAST(AST ast) {
+        Tape tape = new Tape(1024);
+        ArrayDeque<AST> pending = new ArrayDeque<>();
+        pending.push(ast);
+        while (!pending.isEmpty()) {
+            AST node = pending.pop();
+            if (node instanceof Application) {
+                tape.put(APP, 0);
+                pending.push(((Application) node).rhs);
+                pending.push(((Application) node).lhs);
+            } else if (node instanceof Abstraction) {
+                tape.put(LAM, tape.table.id(((Abstraction) node).param.name));
+                pending.push(((Abstraction) node).body);
+            } else {
+                tape.put(var(((Identifier) node).DBindex), tape.table.id(((Identifier) node).name));
+            }
+        }
+        return tape;
+    }
+
+    public AST toAST() {
+        //slots right to left: each complete subterm goes on the stack, APP and LAM take theirs off it
+        AST[] stack = new AST[16];
+        int size = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            AST node;
+            switch (codes[i] & 3) {
+                case APP:
+                    node = new Application(stack[size - 1], stack[size - 2]);
+                    size -= 2;
+                    break;
+                case LAM:
+                    node = new Abstraction(new Identifier(table.name(names[i]), 0), stack[--size]);
+                    break;
+                default:
+                    node = new Identifier(table.name(names[i]), index(codes[i]));
+            }
+            if (size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+            stack[size++] = node;
+        }
+        return stack[0];
+    }
+}
@@ -0,0 +1,166 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+
+/**
+ * Normal order reduction on a {@link Tape}.
+ *
+ * The leftmost redex is the first APP slot followed by a LAM slot. A beta step writes a new tape: the
+ * slots before the redex and after it are moved with System.arraycopy, and the contractum is produced
+ * in one pass over the body in which runs of unchanged slots are copied in bulk as well. Only the VAR
+ * slots of the removed binder (replaced by the argument) and of outer binders (lowered by one) break a
+ * run. The argument is inserted with one arraycopy, and shifted in place by {@link ShiftKernel} when it
+ * is open and goes under binders; its cutoffs are computed once per beta step.
+ *
+ * Slots before the redex do not change, so the search for the next redex resumes just before it.
+ */
+public class TapeEvaluator implements Evaluator {
+
+    private final EvalStats stats = new EvalStats();
+
+    /**
+     * Open subterms of the pass in progress, see substitute().
+     */
+    private int[] open = new int[64];
+
+    /**
+     * @return beta steps of every evaluation so far
+     */
+    public EvalStats getStats() {
+        return stats;
+    }
+
+    public AST evaluate(AST ast) {
+        return normalize(Tape.fromAST(ast)).toAST();
+    }
+
+    /**
+     * @return the normal form of tape, on a new tape; tape itself is left as it is
+     */
+    public Tape normalize(Tape tape) {
+        Tape from = new Tape(tape.length, tape.table);
+        System.arraycopy(tape.codes, 0, from.codes, 0, tape.length);
+        System.arraycopy(tape.names, 0, from.names, 0, tape.length);
+        from.length = tape.length;
+        Tape to = new Tape(tape.length, tape.table);
+        int search = 0;
+        while (true) {
+            int redex = redex(from, search);
+            if (redex < 0) return from;
+            stats.betaReductions++;
+            int body = redex + 2;
+            int arg = from.end(body);
+            int end = from.end(arg);
+            boolean closed = closed(from, arg, end);
+            to.length = 0;
+            copy(from, 0, redex, to);
+            substitute(from, body, arg, end, closed, to);
+            copy(from, end, from.length, to);
+            Tape swap = from;
+            from = to;
+            to = swap;
+            search = Math.max(redex - 1, 0);
+        }
+    }
+
+    private static int redex(Tape tape, int from) {
+        for (int i = from; i < tape.length - 1; i++) {
+            if (Tape.tag(tape.codes[i]) == Tape.APP && Tape.tag(tape.codes[i + 1]) == Tape.LAM) return i;
+        }
+        return -1;
+    }
+
+    private static void copy(Tape from, int start, int end, Tape to) {
+        int n = end - start;
+        if (n <= 0) return;
+        to.ensure(n);
+        System.arraycopy(from.codes, start, to.codes, to.length, n);
+        System.arraycopy(from.names, start, to.names, to.length, n);
+        to.length += n;
+    }
+
+    /**
+     * Copies the body [start, arg) of the redex in from to to, putting the argument [arg, end) for the
+     * VAR slots of the removed binder, shifted by their depth, and lowering the indices bound outside.
+     *
+     * The subterms still open at slot i are kept on the open stack, as the number of their children
+     * still to come, shifted left by one, and 1 in the low bit for a LAM.
+     */
+    private void substitute(Tape from, int start, int arg, int end, boolean argClosed, Tape to) {
+        int[] codes = from.codes;
+        int[] cutoffs = null;
+        int run = start;
+        int depth = 0;
+        int top = 0;
+        for (int i = start; i < arg; i++) {
+            int code = codes[i];
+            int tag = Tape.tag(code);
+            if (tag == Tape.APP) {
+                push(top++, 2 << 1);
+                continue;
+            }
+            if (tag == Tape.LAM) {
+                push(top++, 1 << 1 | 1);
+                depth++;
+                continue;
+            }
+            int index = Tape.index(code);
+            if (index >= depth) {
+                copy(from, run, i, to);
+                run = i + 1;
+                if (index == depth) {
+                    int at = to.length;
+                    copy(from, arg, end, to);
+                    if (depth > 0 && !argClosed) {
+                        if (cutoffs == null) cutoffs = ShiftKernel.cutoffs(from, arg, end, 0);
+                        ShiftKernel.shift(to.codes, at, cutoffs, end - arg, depth);
+                    }
+                } else {
+                    to.put(Tape.var(index - 1), from.names[i]);
+                }
+            }
+            //the leaf completes its parent, which may complete its own parent and so on
+            while (top > 0) {
+                int remaining = (open[top - 1] >> 1) - 1;
+                if (remaining > 0) {
+                    open[top - 1] = remaining << 1 | (open[top - 1] & 1);
+                    break;
+                }
+                if ((open[--top] & 1) != 0) depth--;
+            }
+        }
+        copy(from, run, arg, to);
+    }
+
+    private void push(int top, int frame) {
+        if (top == open.length) open = Arrays.copyOf(open, top * 2);
+        open[top] = frame;
+    }
+
+    /**
+     * @return whether no VAR slot of [start, end) is bound outside it
+     */
+    private boolean closed(Tape tape, int start, int end) {
+        int top = 0;
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            int code = tape.codes[i];
+            int tag = Tape.tag(code);
+            if (tag != Tape.VAR) {
+                push(top++, tag == Tape.APP ? 2 << 1 : 1 << 1 | 1);
+                if (tag == Tape.LAM) depth++;
+                continue;
+            }
+            if (Tape.index(code) >= depth) return false;
+            while (top > 0) {
+                int remaining = (open[top - 1] >> 1) - 1;
+                if (remaining > 0) {
+                    open[top - 1] = remaining << 1 | (open[top - 1] & 1);
+                    break;
+                }
+                if ((open[--top] & 1) != 0) depth--;
+            }
+        }
+        return true;
+    }
+}
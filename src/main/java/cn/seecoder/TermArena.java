@@ -0,0 +1,93 @@
+package cn.seecoder;
+
+import java.util.Arrays;
+
+/**
+ * {@link TermStore} in parallel primitive arrays on the heap: the fields of a node are the entries at
+ * its handle in each array. {@link #reset()} keeps the arrays for the next term.
+ *
+ * Not thread-safe.
+ */
+public class TermArena implements TermStore {
+
+    private byte[] tags;
+    private int[] left;
+    private int[] right;
+    private int[] maxFree;
+    private int size;
+    private final Names names = new Names();
+
+    public TermArena() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity number of nodes room is made for up front
+     */
+    public TermArena(int capacity) {
+        capacity = Math.max(capacity, 16);
+        tags = new byte[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        maxFree = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public byte tag(int node) {
+        return tags[node];
+    }
+
+    public int left(int node) {
+        return left[node];
+    }
+
+    public int right(int node) {
+        return right[node];
+    }
+
+    public int maxFree(int node) {
+        return maxFree[node];
+    }
+
+    public String name(int id) {
+        return names.name(id);
+    }
+
+    public int nameId(String name) {
+        return names.id(name);
+    }
+
+    private int allocate(byte tag, int l, int r, int free) {
+        if (size == tags.length) {
+            int capacity = size * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            maxFree = Arrays.copyOf(maxFree, capacity);
+        }
+        tags[size] = tag;
+        left[size] = l;
+        right[size] = r;
+        maxFree[size] = free;
+        return size++;
+    }
+
+    public int var(int name, int index) {
+        return allocate(VAR, name, index, index);
+    }
+
+    public int lam(int name, int body) {
+        return allocate(LAM, body, name, Math.max(maxFree[body] - 1, -1));
+    }
+
+    public int app(int lhs, int rhs) {
+        return allocate(APP, lhs, rhs, Math.max(maxFree[lhs], maxFree[rhs]));
+    }
+}
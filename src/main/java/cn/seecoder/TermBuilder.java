@@ -0,0 +1,19 @@
+package cn.seecoder;
+
+/**
+ * Builds the nodes of a parsed term; Parser calls it bottom up, children before their parent.
+ *
+ * @param <T> the AST node type; terms whose nodes are int handles, like a {@link TermStore}, are built
+ *            through {@link IntTermBuilder} instead
+ */
+interface TermBuilder<T> {
+
+    /**
+     * @param index De Bruijn index, -1 for a free variable
+     */
+    T identifier(String name, int index);
+
+    T abstraction(String param, T body);
+
+    T application(T lhs, T rhs);
+}
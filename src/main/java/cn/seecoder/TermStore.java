@@ -0,0 +1,138 @@
+package cn.seecoder;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Storage of terms as nodes addressed by int handles, the representation {@link ArenaEvaluator} works
+ * on. A node has a tag and three int fields:
+ *
+ * APP: left = function, right = argument
+ * LAM: left = body, right = name of the parameter
+ * VAR: left = name, right = De Bruijn index (-1 for a free variable)
+ *
+ * maxFree holds the same value as {@link AST#getMaxFree()}. Names are ids into a table of distinct
+ * strings. Nodes are bump allocated and never freed one by one: {@link #reset()} drops all of them at
+ * once. Handles of one store mean nothing in another.
+ */
+public interface TermStore extends IntTermBuilder {
+
+    byte APP = 0;
+    byte LAM = 1;
+    byte VAR = 2;
+
+    /**
+     * @return number of nodes allocated since the last reset
+     */
+    int size();
+
+    /**
+     * Frees every node. Handles handed out before are invalid afterwards; name ids stay valid.
+     */
+    void reset();
+
+    byte tag(int node);
+
+    int left(int node);
+
+    int right(int node);
+
+    int maxFree(int node);
+
+    String name(int id);
+
+    int nameId(String name);
+
+    int var(int name, int index);
+
+    int lam(int name, int body);
+
+    int app(int lhs, int rhs);
+
+    default int identifier(String name, int index) {
+        return var(nameId(name), index);
+    }
+
+    default int abstraction(String param, int body) {
+        return lam(nameId(param), body);
+    }
+
+    default int application(int lhs, int rhs) {
+        return app(lhs, rhs);
+    }
+
+    /**
+     * Copies ast into the store. Children get lower handles than their parents.
+     *
+     * @return handle of the root
+     */
+    default int fromAST(AST ast) {
+        //post order on an explicit stack: a node is built once its children are on the results stack
+        ArrayDeque<AST> pending = new ArrayDeque<>();
+        ArrayDeque<Boolean> visited = new ArrayDeque<>();
+        int[] results = new int[16];
+        int count = 0;
+        pending.push(ast);
+        visited.push(false);
+        while (!pending.isEmpty()) {
+            AST node = pending.pop();
+            boolean done = visited.pop();
+            int handle;
+            if (node instanceof Identifier) {
+                handle = var(nameId(((Identifier) node).name), ((Identifier) node).DBindex);
+            } else if (!done) {
+                pending.push(node);
+                visited.push(true);
+                if (node instanceof Application) {
+                    pending.push(((Application) node).rhs);
+                    visited.push(false);
+                    pending.push(((Application) node).lhs);
+                } else {
+                    pending.push(((Abstraction) node).body);
+                }
+                visited.push(false);
+                continue;
+            } else if (node instanceof Application) {
+                int rhs = results[--count];
+                handle = app(results[--count], rhs);
+            } else {
+                handle = lam(nameId(((Abstraction) node).param.name), results[--count]);
+            }
+            if (count == results.length) results = Arrays.copyOf(results, count * 2);
+            results[count++] = handle;
+        }
+        return results[0];
+    }
+
+    /**
+     * @return the term at handle node as AST nodes
+     */
+    default AST toAST(int node) {
+        ArrayDeque<int[]> pending = new ArrayDeque<>();
+        AST[] results = new AST[16];
+        int count = 0;
+        pending.push(new int[]{node, 0});
+        while (!pending.isEmpty()) {
+            int[] frame = pending.pop();
+            int handle = frame[0];
+            AST result;
+            if (tag(handle) == VAR) {
+                result = new Identifier(name(left(handle)), right(handle));
+            } else if (frame[1] == 0) {
+                frame[1] = 1;
+                pending.push(frame);
+                if (tag(handle) == APP) pending.push(new int[]{right(handle), 0});
+                pending.push(new int[]{left(handle), 0});
+                continue;
+            } else if (tag(handle) == APP) {
+                AST rhs = results[--count];
+                result = new Application(results[--count], rhs);
+            } else {
+                result = new Abstraction(new Identifier(name(right(handle)), 0), results[--count]);
+            }
+            if (count == results.length) results = Arrays.copyOf(results, count * 2);
+            results[count++] = result;
+        }
+        return results[0];
+    }
+}
@@ -0,0 +1,11 @@
+package cn.seecoder;
+
+/**
+ * How much a {@link TraceSink} wants to hear, from nothing to every single shift.
+ */
+public enum TraceLevel {
+    OFF,        // nothing
+    SUMMARY,    // one line per phase: parsed term, result
+    STEPS,      // tokens and every evaluation / substitution step
+    FULL        // also every subst and shift of a single node
+}
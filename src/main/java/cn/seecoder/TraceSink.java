@@ -0,0 +1,30 @@
+package cn.seecoder;
+
+/**
+ * Receiver of the trace written by Lexer, Parser and Interpreter.
+ *
+ * Messages are only built behind {@link #isEnabled(TraceLevel)}, so a sink at {@link TraceLevel#OFF}
+ * costs one check per step and no allocation.
+ */
+public interface TraceSink {
+
+    TraceSink OFF = new TraceSink() {
+        public TraceLevel getLevel() {
+            return TraceLevel.OFF;
+        }
+
+        public void trace(String message) {
+        }
+    };
+
+    TraceLevel getLevel();
+
+    /**
+     * @param message one line, without line break
+     */
+    void trace(String message);
+
+    default boolean isEnabled(TraceLevel level) {
+        return level != TraceLevel.OFF && getLevel().compareTo(level) >= 0;
+    }
+}
@@ -0,0 +1,601 @@
+package cn.seecoder;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Throughput benchmarks. Not a unit test, run it by hand after {@code mvn test-compile}:
+ *
+ * java -cp target/classes:target/test-classes cn.seecoder.Benchmark [name ...]
+ *
+ * Without arguments every benchmark is run.
+ */
+public class Benchmark {
+
+    private static final long WARMUP_NANOS = 1000_000_000L;
+    private static final long MEASURE_NANOS = 2000_000_000L;
+    private static final int MIN_RUNS = 5;
+
+    /**
+     * Runs body for WARMUP_NANOS, then for MEASURE_NANOS (and at least MIN_RUNS times)
+     * and returns the mean time of the measured runs in nanoseconds.
+     */
+    static double measure(Runnable body) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) body.run();
+        int runs = 0;
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            body.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS || runs < MIN_RUNS);
+        return elapsed / (double) runs;
+    }
+
+    /**
+     * Concatenates the test corpus until the result is at least size characters long.
+     */
+    static String corpus(int size) {
+        StringBuilder builder = new StringBuilder(size + 4096);
+        String[] sources = new InterpreterTest().sources;
+        while (builder.length() < size) {
+            for (String source : sources) builder.append(source).append(' ');
+        }
+        return builder.toString();
+    }
+
+    static void lexer() {
+        final String source = corpus(8 << 20);
+        double ns = measure(new Runnable() {
+            public void run() {
+                Lexer lexer = new Lexer(source, TraceSink.OFF);
+                while (lexer.token != TokenType.EOF) lexer.skip(lexer.token);
+            }
+        });
+        double mb = source.length() / (1024.0 * 1024.0);
+        System.out.printf("lexer: %.1f MB in %.1f ms, %.1f MB/s%n", mb, ns / 1e6, mb / (ns / 1e9));
+    }
+
+    static void trace() {
+        final String source = InterpreterTest.app(InterpreterTest.EQ, InterpreterTest.FIVE, InterpreterTest.FIVE);
+        for (final TraceLevel level : TraceLevel.values()) {
+            double ns = measure(new Runnable() {
+                public void run() {
+                    new Interpreter(source, new BufferTraceSink(level));
+                }
+            });
+            System.out.printf("trace %-7s: EQ FIVE FIVE in %.2f ms%n", level, ns / 1e6);
+        }
+    }
+
+    /**
+     * Evaluation time of the Church numeral workloads of InterpreterTest: PLUS (5), SUB (9), EQ (27).
+     */
+    static void church() {
+        final String[] sources = new InterpreterTest().sources;
+        for (final int i : new int[]{5, 9, 27}) {
+            double ns = measure(new Runnable() {
+                public void run() {
+                    new Interpreter(new Parser(new Lexer(sources[i], TraceSink.OFF))).eval();
+                }
+            });
+            System.out.printf("church %2d: %.3f ms%n", i, ns / 1e6);
+        }
+    }
+
+    /**
+     * Mean time of one eval of source with evaluator, null for Interpreter's own substitution.
+     * The term is parsed once, eval() leaves it unchanged and can be run on it again and again.
+     */
+    static double engine(final String source, final Evaluator evaluator) {
+        Parser parser = new Parser(new Lexer(source, TraceSink.OFF));
+        final Interpreter interpreter = evaluator == null ? new Interpreter(parser) : new Interpreter(parser, evaluator);
+        return measure(new Runnable() {
+            public void run() {
+                interpreter.eval();
+            }
+        });
+    }
+
+    /**
+     * Krivine machine against Interpreter on SUB (9) and EQ FIVE FIVE (27).
+     */
+    static void krivine() {
+        String[] sources = new InterpreterTest().sources;
+        for (int i : new int[]{9, 27}) {
+            double interpreter = engine(sources[i], null);
+            double krivine = engine(sources[i], new KrivineEvaluator());
+            System.out.printf("krivine %2d: interpreter %.3f ms, krivine %.3f ms, %.1fx%n",
+                    i, interpreter / 1e6, krivine / 1e6, interpreter / krivine);
+        }
+    }
+
+    /**
+     * Beta steps of Interpreter.eval() and of call-by-need on every InterpreterTest source.
+     */
+    static void sharing() {
+        String[] sources = new InterpreterTest().sources;
+        long interpreterTotal = 0, lazyTotal = 0;
+        for (int i = 0; i < sources.length; i++) {
+            Interpreter interpreter = new Interpreter(new Parser(new Lexer(sources[i], TraceSink.OFF)));
+            interpreter.eval();
+            LazyEvaluator lazy = new LazyEvaluator();
+            lazy.evaluate(new Parser(new Lexer(sources[i], TraceSink.OFF)).parse());
+            long saved = interpreter.getStats().getBetaReductions() - lazy.getStats().getBetaReductions();
+            interpreterTotal += interpreter.getStats().getBetaReductions();
+            lazyTotal += lazy.getStats().getBetaReductions();
+            System.out.printf("sharing %2d: interpreter beta %5d, need %s, saved %d%n",
+                    i, interpreter.getStats().getBetaReductions(), lazy.getStats(), saved);
+        }
+        System.out.printf("sharing total: interpreter beta %d, need beta %d, saved %d%n",
+                interpreterTotal, lazyTotal, interpreterTotal - lazyTotal);
+        String[] corpus = new InterpreterTest().sources;
+        double interpreter = engine(corpus[27], null);
+        double lazy = engine(corpus[27], new LazyEvaluator());
+        System.out.printf("sharing 27: interpreter %.3f ms, need %.3f ms%n", interpreter / 1e6, lazy / 1e6);
+    }
+
+    /**
+     * Normalization by evaluation against Interpreter on the corpus and on arithmetic with large numerals.
+     */
+    static void nbe() {
+        String[] corpus = new InterpreterTest().sources;
+        String[] sources = {corpus[9], corpus[27],
+                InterpreterTest.app(InterpreterTest.PLUS, EvaluatorTest.numeral(100), EvaluatorTest.numeral(100)),
+                InterpreterTest.app("(\\m.\\n.\\f.m (n f))", EvaluatorTest.numeral(30), EvaluatorTest.numeral(30))};
+        String[] names = {"SUB 4 2", "EQ 5 5", "PLUS 100 100", "MUL 30 30"};
+        for (int i = 0; i < sources.length; i++) {
+            double interpreter = engine(sources[i], null);
+            double nbe = engine(sources[i], new NbeEvaluator());
+            System.out.printf("nbe %-12s: interpreter %.3f ms, nbe %.3f ms, %.1fx%n",
+                    names[i], interpreter / 1e6, nbe / 1e6, interpreter / nbe);
+        }
+    }
+
+    /**
+     * Interaction net reduction against Interpreter on workloads
+     * that duplicate work under substitution: POW TWO TWO (6), self-applied numerals and POW iteration,
+     * and a wide normal form, whose rounds are large enough to be rewritten on the common pool.
+     */
+    static void inet() {
+        String[] corpus = new InterpreterTest().sources;
+        String pow = InterpreterTest.POW;
+        String[] sources = {corpus[6],
+                InterpreterTest.app(EvaluatorTest.numeral(3), EvaluatorTest.numeral(3)),
+                InterpreterTest.app(pow, EvaluatorTest.numeral(2), EvaluatorTest.numeral(4)),
+                InterpreterTest.app(pow, EvaluatorTest.numeral(3), EvaluatorTest.numeral(3)),
+                EvaluatorTest.wide(16, 5)};
+        String[] names = {"POW 2 2", "3 3", "POW 2 4", "POW 3 3", "wide 16"};
+        InteractionNetEvaluator inet = new InteractionNetEvaluator();
+        //runs of 16 pairs: only the wide normal form has rounds of more than 256
+        InteractionNetEvaluator pooled = new InteractionNetEvaluator(ForkJoinPool.commonPool(), 16);
+        for (int i = 0; i < sources.length; i++) {
+            double interpreter = engine(sources[i], null);
+            double time = engine(sources[i], inet);
+            double pool = engine(sources[i], pooled);
+            inet.evaluate(new Parser(new Lexer(sources[i], TraceSink.OFF)).parse());
+            pooled.evaluate(new Parser(new Lexer(sources[i], TraceSink.OFF)).parse());
+            long interactions = inet.getStats().getInteractions();
+            System.out.printf("inet %-8s: interpreter %.3f ms, inet %.3f ms (%.1f M interactions/s), on %d threads %.3f ms (%d runs), %s%n",
+                    names[i], interpreter / 1e6, time / 1e6, interactions / time * 1e3,
+                    ForkJoinPool.commonPool().getParallelism(), pool / 1e6, pooled.getStats().getForks(), inet.getStats());
+        }
+    }
+
+    /**
+     * Explicit substitutions against Interpreter on SUB, EQ, large numerals and an IF with a large discarded branch.
+     */
+    static void esubst() {
+        String[] corpus = new InterpreterTest().sources;
+        String[] sources = {corpus[9], corpus[27],
+                InterpreterTest.app(InterpreterTest.PLUS, EvaluatorTest.numeral(100), EvaluatorTest.numeral(100)),
+                InterpreterTest.app(InterpreterTest.IF, InterpreterTest.TRUE, InterpreterTest.ONE,
+                        InterpreterTest.app("(\\m.\\n.\\f.m (n f))", EvaluatorTest.numeral(30), EvaluatorTest.numeral(30)))};
+        String[] names = {"SUB 4 2", "EQ 5 5", "PLUS 100 100", "IF TRUE 1 MUL"};
+        for (int i = 0; i < sources.length; i++) {
+            double interpreter = engine(sources[i], null);
+            double esubst = engine(sources[i], new ExplicitSubstEvaluator());
+            System.out.printf("esubst %-13s: interpreter %.3f ms, esubst %.3f ms, %.1fx%n",
+                    names[i], interpreter / 1e6, esubst / 1e6, interpreter / esubst);
+        }
+    }
+
+    /**
+     * Locally nameless evaluation against Interpreter, both with the strategy of Interpreter.evalAST.
+     */
+    static void levels() {
+        String[] corpus = new InterpreterTest().sources;
+        String[] sources = {corpus[9], corpus[27],
+                InterpreterTest.app(InterpreterTest.PLUS, EvaluatorTest.numeral(100), EvaluatorTest.numeral(100)),
+                InterpreterTest.app("(\\m.\\n.\\f.m (n f))", EvaluatorTest.numeral(30), EvaluatorTest.numeral(30))};
+        String[] names = {"SUB 4 2", "EQ 5 5", "PLUS 100 100", "MUL 30 30"};
+        for (int i = 0; i < sources.length; i++) {
+            double interpreter = engine(sources[i], null);
+            double levels = engine(sources[i], new LocallyNamelessEvaluator());
+            System.out.printf("levels %-12s: interpreter %.3f ms, locally nameless %.3f ms, %.1fx%n",
+                    names[i], interpreter / 1e6, levels / 1e6, interpreter / levels);
+        }
+    }
+
+    /**
+     * Arena evaluation against Interpreter: time, and bytes allocated per eval once the arena has grown.
+     */
+    static void arena() {
+        String[] corpus = new InterpreterTest().sources;
+        String[] sources = {corpus[27],
+                InterpreterTest.app(InterpreterTest.PLUS, EvaluatorTest.numeral(100), EvaluatorTest.numeral(100)),
+                InterpreterTest.app("(\\m.\\n.\\f.m (n f))", EvaluatorTest.numeral(30), EvaluatorTest.numeral(30))};
+        String[] names = {"EQ 5 5", "PLUS 100 100", "MUL 30 30"};
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < sources.length; i++) {
+            final String source = sources[i];
+            final Interpreter interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)));
+            final TermArena arena = new TermArena();
+            final ArenaEvaluator evaluator = new ArenaEvaluator();
+            Runnable arenaRun = new Runnable() {
+                public void run() {
+                    arena.reset();
+                    evaluator.evaluate(arena, new Parser(new Lexer(source, TraceSink.OFF)).parse(arena));
+                }
+            };
+            double interpreterNs = measure(new Runnable() {
+                public void run() {
+                    interpreter.eval();
+                }
+            });
+            double arenaNs = measure(arenaRun);
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            interpreter.eval();
+            long interpreterBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            arenaRun.run();
+            long arenaBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            System.out.printf("arena %-12s: interpreter %.3f ms %d KB, arena (parse included) %.3f ms %d KB, %d nodes%n",
+                    names[i], interpreterNs / 1e6, interpreterBytes >> 10, arenaNs / 1e6, arenaBytes >> 10, arena.size());
+        }
+    }
+
+    /**
+     * Tape evaluation against Interpreter and ArenaEvaluator in beta steps per second. The JVM cannot read
+     * the cache miss counters; for those, run this benchmark alone under
+     * perf stat -e cache-references,cache-misses java ... cn.seecoder.Benchmark tape
+     * once per engine with -Dtape.engine=interpreter|arena|tape.
+     */
+    static void tape() {
+        String[] corpus = new InterpreterTest().sources;
+        String[] sources = {corpus[27],
+                InterpreterTest.app(InterpreterTest.PLUS, EvaluatorTest.numeral(100), EvaluatorTest.numeral(100)),
+                InterpreterTest.app("(\\m.\\n.\\f.m (n f))", EvaluatorTest.numeral(30), EvaluatorTest.numeral(30))};
+        String[] names = {"EQ 5 5", "PLUS 100 100", "MUL 30 30"};
+        String only = System.getProperty("tape.engine");
+        for (int i = 0; i < sources.length; i++) {
+            AST ast = new Parser(new Lexer(sources[i], TraceSink.OFF)).parse();
+            Interpreter interpreter = new Interpreter(new Parser(new Lexer(sources[i], TraceSink.OFF)));
+            interpreter.eval();
+            long betas = interpreter.getStats().getBetaReductions();
+            TapeEvaluator tape = new TapeEvaluator();
+            tape.evaluate(ast);
+            long tapeBetas = tape.getStats().getBetaReductions();
+            StringBuilder line = new StringBuilder(String.format("tape %-12s:", names[i]));
+            if (only == null || only.equals("interpreter")) {
+                double ns = engine(sources[i], null);
+                line.append(String.format(" interpreter %.3f ms %.1f M beta/s,", ns / 1e6, betas / ns * 1e3));
+            }
+            if (only == null || only.equals("arena")) {
+                double ns = engine(sources[i], new ArenaEvaluator());
+                line.append(String.format(" arena %.3f ms %.1f M beta/s,", ns / 1e6, betas / ns * 1e3));
+            }
+            if (only == null || only.equals("tape")) {
+                final Tape term = Tape.fromAST(ast);
+                final TapeEvaluator evaluator = new TapeEvaluator();
+                double ns = measure(new Runnable() {
+                    public void run() {
+                        evaluator.normalize(term);
+                    }
+                });
+                line.append(String.format(" tape %.3f ms %.1f M beta/s (%d normal order steps)", ns / 1e6, tapeBetas / ns * 1e3, tapeBetas));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * ShiftKernel against its scalar fallback and Interpreter.shift on an open term of 2.4 million nodes,
+     * in million slots shifted per second. Cutoffs are computed once, outside the measured loop, as
+     * TapeEvaluator does for an argument put under binders.
+     */
+    static void shift() {
+        final AST ast = openTree(30, 0, true);
+        final Interpreter interpreter = new Interpreter(new Parser(new Lexer("x", TraceSink.OFF)));
+        final Tape tape = Tape.fromAST(ast);
+        final int[] cutoffs = ShiftKernel.cutoffs(tape, 0, tape.length(), 0);
+        final int n = tape.length();
+        double object = measure(new Runnable() {
+            public void run() {
+                interpreter.shift(1, ast, 0);
+            }
+        });
+        double scalar = measure(new Runnable() {
+            public void run() {
+                ShiftKernel.shiftScalar(tape.codes, 0, cutoffs, n, 1);
+            }
+        });
+        double kernel = measure(new Runnable() {
+            public void run() {
+                ShiftKernel.shift(tape.codes, 0, cutoffs, n, 1);
+            }
+        });
+        System.out.printf("shift %d slots: Interpreter.shift %.2f ms %.0f M/s, scalar %.3f ms %.0f M/s, kernel %.3f ms %.0f M/s%n",
+                n, object / 1e6, n / object * 1e3, scalar / 1e6, n / scalar * 1e3, kernel / 1e6, n / kernel * 1e3);
+    }
+
+    /**
+     * @return a balanced tree of height levels, with a binder every third level and leaves that are
+     * bound or free in turn, so that neither the branches nor maxFree let a shift skip much
+     */
+    private static AST openTree(int levels, int binders, boolean free) {
+        if (levels == 0) return new Identifier("y", free || binders == 0 ? binders : binders - 1);
+        if (levels % 3 == 0) return new Abstraction(new Identifier("y", 0), openTree(levels - 1, binders + 1, free));
+        return new Application(openTree(levels - 1, binders, false), openTree(levels - 1, binders, true));
+    }
+
+    /**
+     * Comparisons of small numerals with LEQ and EQ, every pair in turn, evaluated by Interpreter without
+     * and with a normal form cache shared by the whole workload.
+     */
+    static void cache() {
+        String[] numerals = {InterpreterTest.ZERO, InterpreterTest.ONE, InterpreterTest.TWO, InterpreterTest.THREE,
+                InterpreterTest.FOUR, InterpreterTest.FIVE};
+        final List<String> workload = new ArrayList<>();
+        for (String m : numerals) {
+            for (String n : numerals) {
+                workload.add(InterpreterTest.app(InterpreterTest.LEQ, m, n));
+                workload.add(InterpreterTest.app(InterpreterTest.EQ, m, n));
+            }
+        }
+        final NormalFormCache cache = new NormalFormCache(4096, 1 << 20);
+        double plain = measure(new Runnable() {
+            public void run() {
+                for (String source : workload) new Interpreter(new Parser(new Lexer(source, TraceSink.OFF))).eval();
+            }
+        });
+        double cached = measure(new Runnable() {
+            public void run() {
+                for (String source : workload) new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)), TraceSink.OFF, cache).eval();
+            }
+        });
+        System.out.printf("cache %d terms: interpreter %.3f ms, cached %.3f ms, %.1fx (%s)%n",
+                workload.size(), plain / 1e6, cached / 1e6, plain / cached, cache);
+        NormalFormCache first = new NormalFormCache(4096, 1 << 20);
+        long betas = 0, cold = 0;
+        for (String source : workload) {
+            Interpreter interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)));
+            interpreter.eval();
+            betas += interpreter.getStats().getBetaReductions();
+            interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)), TraceSink.OFF, first);
+            interpreter.eval();
+            cold += interpreter.getStats().getBetaReductions();
+        }
+        System.out.printf("cache first pass: beta %d without cache, %d with (%s)%n", betas, cold, first);
+    }
+
+    /**
+     * Threads parsing the corpus ROUNDS times at the same time, each through its own HashCons or all
+     * through one new ConcurrentHashCons, in parses per second, with the nodes kept and the inserts retried.
+     */
+    private static final int ROUNDS = 20;
+
+    static void intern() {
+        final String[] sources = new InterpreterTest().sources;
+        for (final int threads : new int[]{1, 8, 32}) {
+            final ExecutorService pool = Executors.newFixedThreadPool(threads);
+            final long[] nodes = new long[2];
+            final ConcurrentHashCons[] shared = new ConcurrentHashCons[1];
+            double own = measure(() -> run(pool, threads, () -> {
+                HashCons terms = new HashCons();
+                for (int round = 0; round < ROUNDS; round++)
+                    for (String source : sources) new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, terms).parse();
+                return (long) terms.size();
+            }, nodes, 0));
+            double one = measure(() -> {
+                final ConcurrentHashCons terms = new ConcurrentHashCons();
+                shared[0] = terms;
+                run(pool, threads, () -> {
+                    for (int round = 0; round < ROUNDS; round++)
+                        for (String source : sources) new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, terms).parse();
+                    return 0L;
+                }, nodes, 1);
+                nodes[1] = terms.size();
+            });
+            pool.shutdown();
+            double parses = threads * ROUNDS * sources.length;
+            System.out.printf("intern %2d threads: own table %.0f k parses/s, %d nodes; shared table %.0f k parses/s, "
+                            + "%d nodes, %d retries%n",
+                    threads, parses / own * 1e6, nodes[0], parses / one * 1e6, nodes[1], shared[0].getRetries());
+        }
+    }
+
+    /**
+     * Throughput of one Engine shared by 1, 8 and 32 threads, each evaluating the corpus ROUNDS times,
+     * against one Interpreter built per evaluation.
+     */
+    static void engine() {
+        final String[] sources = new InterpreterTest().sources;
+        final Engine engine = new Engine(new ConcurrentHashCons());
+        final long[] betas = new long[2];
+        for (final int threads : new int[]{1, 8, 32}) {
+            final ExecutorService pool = Executors.newFixedThreadPool(threads);
+            double interpreters = measure(() -> run(pool, threads, () -> {
+                for (int round = 0; round < ROUNDS; round++)
+                    for (String source : sources) new Interpreter(new Parser(new Lexer(source, TraceSink.OFF))).eval();
+                return 0L;
+            }, betas, 0));
+            double shared = measure(() -> run(pool, threads, () -> {
+                EvalContext context = new EvalContext();
+                for (int round = 0; round < ROUNDS; round++)
+                    for (String source : sources) engine.evaluate(source, context);
+                return context.getStats().getBetaReductions();
+            }, betas, 1));
+            pool.shutdown();
+            double evaluations = threads * ROUNDS * sources.length;
+            System.out.printf("engine %2d threads: interpreter per call %.0f k evaluations/s, shared engine %.0f k evaluations/s "
+                            + "(%d beta steps per run)%n",
+                    threads, evaluations / interpreters * 1e6, evaluations / shared * 1e6, betas[1]);
+        }
+    }
+
+    /**
+     * The corpus repeated a thousand times, evaluated in a loop of new Interpreters and by BatchEvaluator
+     * on pools of 1 and of every available processor.
+     */
+    static void batch() {
+        final List<String> sources = new ArrayList<>();
+        for (int round = 0; round < 1000; round++) sources.addAll(Arrays.asList(new InterpreterTest().sources));
+        double loop = measure(() -> {
+            for (String source : sources) new Interpreter(new Parser(new Lexer(source, TraceSink.OFF))).eval();
+        });
+        System.out.printf("batch %d sources: interpreter loop %.0f ms, %.0f k/s%n",
+                sources.size(), loop / 1e6, sources.size() / loop * 1e6);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : processors == 1 ? new int[]{1} : new int[]{1, processors}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            final BatchEvaluator batch = new BatchEvaluator(new Engine(), pool, Long.MAX_VALUE);
+            double time = measure(() -> batch.evaluate(sources));
+            pool.shutdown();
+            System.out.printf("batch %d sources: %d threads %.0f ms, %.0f k/s, %.1fx the loop%n",
+                    sources.size(), parallelism, time / 1e6, sources.size() / time * 1e6, loop / time);
+        }
+    }
+
+    /**
+     * Interpreter against ParallelEvaluator on a normal form 32 branches wide, each a product of numerals,
+     * on pools of 1 and of every available processor and with thresholds from 16 nodes to never.
+     */
+    static void parallel() {
+        String source = EvaluatorTest.wide(32, 20);
+        double interpreter = engine(source, null);
+        System.out.printf("parallel wide 32: interpreter %.3f ms%n", interpreter / 1e6);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : processors == 1 ? new int[]{1} : new int[]{1, processors}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            for (long threshold : new long[]{16, 256, Long.MAX_VALUE}) {
+                double time = engine(source, new ParallelEvaluator(pool, threshold));
+                System.out.printf("parallel wide 32: %d threads, threshold %s: %.3f ms, %.1fx%n", parallelism,
+                        threshold == Long.MAX_VALUE ? "never" : String.valueOf(threshold), time / 1e6, interpreter / time);
+            }
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs task once on each of threads threads of pool, and stores the sum of the results in nodes[slot].
+     */
+    private static void run(ExecutorService pool, int threads, Callable<Long> task, long[] nodes, int slot) {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) tasks.add(task);
+        try {
+            long sum = 0;
+            for (Future<Long> result : pool.invokeAll(tasks)) sum += result.get();
+            nodes[slot] = sum;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Nodes visited by substitution and bytes allocated per beta step of Interpreter on every InterpreterTest source.
+     */
+    static void subst() {
+        String[] sources = new InterpreterTest().sources;
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long betas = 0, visits = 0, bytes = 0;
+        for (int round = 0; round < 1000; round++) {
+            for (String source : sources) {
+                Interpreter interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)));
+                long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                interpreter.eval();
+                bytes += threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+                betas += interpreter.getStats().getBetaReductions();
+                visits += interpreter.getStats().getSubstVisits();
+            }
+        }
+        System.out.printf("subst: %.1f nodes visited and %.0f bytes allocated per beta step%n",
+                visits / (double) betas, bytes / (double) betas);
+    }
+
+    public static void main(String[] args) {
+        String[] names = args.length == 0 ? new String[]{"lexer", "trace", "church", "krivine", "sharing", "nbe", "inet", "subst", "esubst", "levels", "arena", "tape", "shift", "cache", "intern", "engine", "batch", "parallel"} : args;
+        for (String name : names) {
+            switch (name) {
+                case "lexer":
+                    lexer();
+                    break;
+                case "trace":
+                    trace();
+                    break;
+                case "church":
+                    church();
+                    break;
+                case "krivine":
+                    krivine();
+                    break;
+                case "sharing":
+                    sharing();
+                    break;
+                case "nbe":
+                    nbe();
+                    break;
+                case "inet":
+                    inet();
+                    break;
+                case "subst":
+                    subst();
+                    break;
+                case "esubst":
+                    esubst();
+                    break;
+                case "levels":
+                    levels();
+                    break;
+                case "arena":
+                    arena();
+                    break;
+                case "tape":
+                    tape();
+                    break;
+                case "shift":
+                    shift();
+                    break;
+                case "cache":
+                    cache();
+                    break;
+                case "intern":
+                    intern();
+                    break;
+                case "engine":
+                    engine();
+                    break;
+                case "batch":
+                    batch();
+                    break;
+                case "parallel":
+                    parallel();
+                    break;
+                default:
+                    System.out.println("unknown benchmark: " + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package cn.seecoder;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EvaluatorTest {
+
+    static final String[] SOURCES = new InterpreterTest().sources;
+
+    static AST parse(String source) {
+        return ParserTest.parse(source);
+    }
+
+    /**
+     * Checks that evaluator gives the normal form of Interpreter.eval() on the InterpreterTest corpus.
+     */
+    static void assertSameNormalForms(Evaluator evaluator) {
+        for (int i = 0; i < SOURCES.length; i++) {
+            String expected = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF))).eval().toString();
+            AST result = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF)), evaluator).eval();
+            assertEquals("source " + i, expected, result.toString());
+        }
+    }
+
+    /**
+     * n identities applied to each other, left nested: ((I I) I) ...
+     */
+    static String spine(int n) {
+        StringBuilder builder = new StringBuilder(n * 7);
+        for (int i = 0; i < n; i++) builder.append("(\\x.x) ");
+        return builder.toString();
+    }
+
+    /**
+     * The Church numeral n written out: \\f.\\x.f (f (... x))
+     */
+    static String numeral(int n) {
+        StringBuilder builder = new StringBuilder("(\\f.\\x.");
+        for (int i = 0; i < n; i++) builder.append("f (");
+        builder.append('x');
+        for (int i = 0; i < n; i++) builder.append(')');
+        return builder.append(')').toString();
+    }
+
+    @Test
+    public void testIterative() {
+        assertSameNormalForms(new IterativeEvaluator());
+    }
+
+    @Test
+    public void testIterativeDoesNotMutate() {
+        AST ast = parse(SOURCES[27]);
+        String before = ast.toString();
+        Evaluator evaluator = new IterativeEvaluator();
+        assertEquals(evaluator.evaluate(ast).toString(), evaluator.evaluate(ast).toString());
+        assertEquals(before, ast.toString());
+    }
+
+    @Test
+    public void testIterativeDeepSpine() {
+        AST result = new IterativeEvaluator().evaluate(parse(spine(200_000)));
+        assertEquals("\\.0", result.toString());
+    }
+
+    @Test
+    public void testIterativeDeepBinders() {
+        AST result = new IterativeEvaluator().evaluate(parse(ParserTest.nested(100_000) + " ((\\x.x) (\\x.x))"));
+        int depth = 0;
+        while (result instanceof Abstraction) {
+            result = ((Abstraction) result).body;
+            depth++;
+        }
+        assertEquals(100_000, depth);
+        assertTrue(result instanceof Application);
+        assertEquals("(99999 \\.0)", result.toString());
+    }
+
+    @Test
+    public void testKrivine() {
+        assertSameNormalForms(new KrivineEvaluator());
+    }
+
+    @Test
+    public void testKrivineFreeVariables() {
+        assertEquals("(-1 -1)", new KrivineEvaluator().evaluate(parse("(\\x.x a) (\\y.b y)")).toString());
+        assertEquals("(-1 \\.(-1 0))", new KrivineEvaluator().evaluate(parse("(\\x.x) (a \\y.((\\z.z) b) y)")).toString());
+        AST open = new Application(new Abstraction(new Identifier("x", 0), new Identifier("y", 1)), new Identifier("z", 0));
+        assertEquals("0", new KrivineEvaluator().evaluate(open).toString());
+    }
+
+    @Test
+    public void testLazy() {
+        assertSameNormalForms(new LazyEvaluator());
+    }
+
+    @Test
+    public void testLazySharesArguments() {
+        //DOUBLE n = \f.\x.n f (n f x) uses its argument twice, the argument PRED THREE needs reducing
+        String source = InterpreterTest.app("(\\n.\\f.\\x.n f (n f x))", InterpreterTest.app(InterpreterTest.PRED, InterpreterTest.THREE));
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)));
+        String expected = interpreter.eval().toString();
+        LazyEvaluator lazy = new LazyEvaluator();
+        assertEquals(expected, lazy.evaluate(parse(source)).toString());
+        assertTrue(lazy.getStats().getThunkHits() > 0);
+        assertTrue(lazy.getStats() + " vs " + interpreter.getStats(),
+                lazy.getStats().getBetaReductions() < interpreter.getStats().getBetaReductions());
+    }
+
+    @Test
+    public void testNbe() {
+        assertSameNormalForms(new NbeEvaluator());
+    }
+
+    @Test
+    public void testNbeLargeNumerals() {
+        String sum = InterpreterTest.app(InterpreterTest.PLUS, numeral(300), numeral(400));
+        assertEquals(parse(numeral(700)).toString(), new NbeEvaluator().evaluate(parse(sum)).toString());
+        String product = InterpreterTest.app("(\\m.\\n.\\f.m (n f))", numeral(30), numeral(40));
+        assertEquals(parse(numeral(1200)).toString(), new NbeEvaluator().evaluate(parse(product)).toString());
+    }
+
+    @Test
+    public void testInteractionNet() {
+        assertSameNormalForms(new InteractionNetEvaluator());
+    }
+
+    @Test
+    public void testInteractionNetParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            InteractionNetEvaluator sequential = new InteractionNetEvaluator();
+            // grain 1: every round goes to the pool, down to runs of one pair
+            InteractionNetEvaluator parallel = new InteractionNetEvaluator(pool, 1);
+            assertSameNormalForms(parallel);
+            long runs = 0;
+            for (int i = 0; i < SOURCES.length; i++) {
+                String expected = sequential.evaluate(parse(SOURCES[i])).toString();
+                assertEquals("source " + i, expected, parallel.evaluate(parse(SOURCES[i])).toString());
+                assertEquals("source " + i, sequential.getStats().getInteractions(), parallel.getStats().getInteractions());
+                assertEquals("source " + i, sequential.getStats().getBetaReductions(), parallel.getStats().getBetaReductions());
+                assertEquals(0, sequential.getStats().getForks());
+                runs += parallel.getStats().getForks();
+            }
+            assertTrue(runs > 0);
+            assertSameNormalForms(new InteractionNetEvaluator(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testHashConsedEval() {
+        HashCons terms = new HashCons();
+        for (int i = 0; i < SOURCES.length; i++) {
+            String expected = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF))).eval().toString();
+            Parser parser = new Parser(new Lexer(SOURCES[i], TraceSink.OFF), TraceSink.OFF, terms);
+            Interpreter interpreter = new Interpreter(parser);
+            assertEquals("source " + i, expected, interpreter.eval().toString());
+            assertEquals("source " + i, expected, interpreter.eval().toString());
+        }
+    }
+
+    @Test
+    public void testEvalTwice() {
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer(SOURCES[27], TraceSink.OFF)));
+        String first = interpreter.eval().toString();
+        long betas = interpreter.getStats().getBetaReductions();
+        assertEquals(first, interpreter.eval().toString());
+        assertEquals(2 * betas, interpreter.getStats().getBetaReductions());
+    }
+
+    @Test
+    public void testEvalDoesNotMutate() {
+        AST ast = parse(SOURCES[27]);
+        String before = ast.toString();
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer("x", TraceSink.OFF)));
+        assertEquals(interpreter.evaluate(ast).toString(), interpreter.evaluate(ast).toString());
+        assertEquals(before, ast.toString());
+        // a normal form comes back as it is
+        AST normal = parse(numeral(50));
+        assertTrue(normal == interpreter.evaluate(normal));
+    }
+
+    @Test
+    public void testClosedArgumentIsNotCopied() {
+        AST argument = parse(numeral(1000));
+        AST ast = new Application(parse("\\x.\\f.f x x x"), argument);
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer("x", TraceSink.OFF)));
+        AST result = ((Abstraction) interpreter.evaluate(ast)).body;
+        // the numeral is closed and in normal form: all three occurrences are the argument itself
+        assertTrue(((Application) ((Application) ((Application) result).lhs).lhs).rhs == argument);
+        assertTrue(((Application) ((Application) result).lhs).rhs == argument);
+        assertTrue(((Application) result).rhs == argument);
+        assertTrue(interpreter.getStats().getSkippedTraversals() > 0);
+    }
+
+    @Test
+    public void testExplicitSubst() {
+        assertSameNormalForms(new ExplicitSubstEvaluator());
+    }
+
+    @Test
+    public void testExplicitSubstSkipsDiscardedBranch() {
+        String omega = "((\\x.x x)(\\x.x x))";
+        String source = InterpreterTest.app(InterpreterTest.IF, InterpreterTest.TRUE, InterpreterTest.ONE, omega);
+        assertEquals("\\.\\.(1 0)", new ExplicitSubstEvaluator().evaluate(parse(source)).toString());
+    }
+
+    @Test
+    public void testExplicitSubstFreeVariables() {
+        AST free = new Abstraction(new Identifier("x", 0), new Application(new Identifier("y", 3), new Identifier("x", 0)));
+        AST ast = new Application(new Abstraction(new Identifier("z", 0), free), parse("\\u.u"));
+        assertEquals("\\.(2 0)", new ExplicitSubstEvaluator().evaluate(ast).toString());
+        assertEquals("\\.(-1 0)", new ExplicitSubstEvaluator().evaluate(parse("\\x.y ((\\f.\\a.f a) (\\u.u) x)")).toString());
+    }
+
+    @Test
+    public void testLocallyNameless() {
+        assertSameNormalForms(new LocallyNamelessEvaluator());
+    }
+
+    @Test
+    public void testLocallyNamelessFreeVariables() {
+        AST free = new Abstraction(new Identifier("x", 0), new Application(new Identifier("y", 3), new Identifier("x", 0)));
+        AST ast = new Application(new Abstraction(new Identifier("z", 0), free), parse("\\u.u"));
+        assertEquals("\\.(2 0)", new LocallyNamelessEvaluator().evaluate(ast).toString());
+        AST result = new LocallyNamelessEvaluator().evaluate(parse("\\x.y ((\\f.\\a.f a) (\\u.u) x)"));
+        assertEquals("\\.(-1 0)", result.toString());
+        assertEquals("\\x.(y x)", result.toShow());
+    }
+
+    @Test
+    public void testArena() {
+        assertSameNormalForms(new ArenaEvaluator());
+    }
+
+    @Test
+    public void testArenaParsedTerms() {
+        TermArena arena = new TermArena();
+        ArenaEvaluator evaluator = new ArenaEvaluator();
+        for (int i = 0; i < SOURCES.length; i++) {
+            arena.reset();
+            String expected = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF))).eval().toString();
+            int term = new Parser(new Lexer(SOURCES[i], TraceSink.OFF)).parse(arena);
+            assertEquals("source " + i, expected, arena.toAST(evaluator.evaluate(arena, term)).toString());
+        }
+    }
+
+    @Test
+    public void testMappedStore() throws IOException {
+        try (MappedTermStore store = new MappedTermStore()) {
+            assertSameNormalForms(new ArenaEvaluator(store));
+        }
+    }
+
+    @Test
+    public void testMappedStoreBeyondHeap() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Xmx32m", "-cp", System.getProperty("java.class.path"),
+                MappedStoreCheck.class.getName(), "21").redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = reader.readLine()) != null; ) output.append(line).append('\n');
+        }
+        assertEquals(output.toString(), 0, process.waitFor());
+    }
+
+    @Test
+    public void testTape() {
+        assertSameNormalForms(new TapeEvaluator());
+    }
+
+    @Test
+    public void testTapeConversion() {
+        for (String source : SOURCES) {
+            AST ast = parse(source);
+            Tape tape = Tape.fromAST(ast);
+            assertEquals(ast.getSize(), tape.length());
+            assertEquals(ast.toShow(), tape.toAST().toShow());
+            assertEquals(ast.toString(), tape.toAST().toString());
+        }
+    }
+
+    @Test
+    public void testTapeFreeVariables() {
+        AST free = new Abstraction(new Identifier("x", 0), new Application(new Identifier("y", 3), new Identifier("x", 0)));
+        AST ast = new Application(new Abstraction(new Identifier("z", 0), free), parse("\\u.u"));
+        assertEquals("\\.(2 0)", new TapeEvaluator().evaluate(ast).toString());
+        // an open argument put under binders is shifted
+        assertEquals("\\.\\.(0 \\.(2 -1))", new TapeEvaluator().evaluate(parse("\\a.(\\x.\\b.b \\c.x) (a y)")).toString());
+    }
+
+    /**
+     * An open term: every variable of the corpus sources under a few extra binders, applied to
+     * variables bound outside.
+     */
+    static AST open(String source, int outside) {
+        AST ast = parse(source);
+        for (int i = 0; i < outside; i++) ast = new Application(ast, new Identifier("o" + i, i));
+        return new Abstraction(new Identifier("v", 0), new Application(ast, new Identifier("v", 0)));
+    }
+
+    @Test
+    public void testShiftKernel() {
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer("x", TraceSink.OFF)));
+        for (String source : SOURCES) {
+            AST ast = open(source, 3);
+            for (int from = 0; from < 3; from++) {
+                String expected = interpreter.shift(5, ast, from).toString();
+                Tape tape = Tape.fromAST(ast);
+                int[] cutoffs = ShiftKernel.cutoffs(tape, 0, tape.length(), from);
+                ShiftKernel.shift(tape.codes, 0, cutoffs, tape.length(), 5);
+                assertEquals(expected, tape.toAST().toString());
+                tape = Tape.fromAST(ast);
+                ShiftKernel.shiftScalar(tape.codes, 0, cutoffs, tape.length(), 5);
+                assertEquals(expected, tape.toAST().toString());
+            }
+        }
+    }
+
+    @Test
+    public void testNormalFormCache() {
+        NormalFormCache cache = new NormalFormCache(1000, 1_000_000);
+        long[] betas = new long[2];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < SOURCES.length; i++) {
+                String expected = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF))).eval().toString();
+                Interpreter interpreter = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF)), TraceSink.OFF, cache);
+                assertEquals("source " + i, expected, interpreter.eval().toString());
+                betas[pass] += interpreter.getStats().getBetaReductions();
+            }
+        }
+        assertEquals(0, betas[1]);
+        assertTrue(cache.getHits() > 0);
+        assertTrue(cache.getMisses() > 0);
+    }
+
+    @Test
+    public void testNormalFormCacheAlphaEquivalence() {
+        assertTrue(NormalFormCache.alphaEquals(parse("\\x.\\y.x y"), parse("\\a.\\b.a b")));
+        assertTrue(!NormalFormCache.alphaEquals(parse("\\x.\\y.x"), parse("\\x.\\y.y")));
+        assertTrue(!NormalFormCache.alphaEquals(parse("\\x.f x"), parse("\\x.g x")));
+        NormalFormCache cache = new NormalFormCache(10, 1000);
+        cache.put(parse("(\\x.x) (\\y.y)"), parse("\\y.y"));
+        assertEquals("\\.0", cache.get(parse("(\\a.a) (\\b.b)")).toString());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testNormalFormCacheEviction() {
+        NormalFormCache cache = new NormalFormCache(2, 30);
+        AST[] terms = {parse("(\\x.x) (\\y.y)"), parse("(\\x.x x) (\\y.y)"), parse("(\\x.x x x) (\\y.y)")};
+        AST identity = parse("\\y.y");
+        cache.put(terms[0], identity);
+        cache.put(terms[1], identity);
+        cache.get(terms[0]);
+        cache.put(terms[2], identity);
+        //terms[1] was the least recently used
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(null, cache.get(terms[1]));
+        assertEquals(identity, cache.get(terms[0]));
+        cache.put(parse(numeral(20)), identity);
+        assertEquals(2, cache.size());
+        assertTrue(cache.weight() <= 30);
+    }
+
+    @Test
+    public void testEngine() throws Exception {
+        final Engine engine = new Engine(new ConcurrentHashCons());
+        final String[] expected = new String[SOURCES.length];
+        for (int i = 0; i < SOURCES.length; i++) {
+            expected[i] = new Interpreter(new Parser(new Lexer(SOURCES[i], TraceSink.OFF))).eval().toString();
+        }
+        final String[][] results = new String[8][SOURCES.length];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < SOURCES.length; i++) {
+                    int j = (i + thread * 5) % SOURCES.length;
+                    results[thread][j] = engine.evaluate(SOURCES[j]).toString();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (String[] result : results) {
+            for (int i = 0; i < SOURCES.length; i++) assertEquals("source " + i, expected[i], result[i]);
+        }
+    }
+
+    @Test
+    public void testEngineContext() {
+        Engine engine = new Engine();
+        BufferTraceSink trace = new BufferTraceSink(TraceLevel.SUMMARY);
+        EvalContext context = new EvalContext(trace, Long.MAX_VALUE);
+        engine.evaluate(SOURCES[5], context);
+        Interpreter interpreter = new Interpreter(new Parser(new Lexer(SOURCES[5], TraceSink.OFF)));
+        interpreter.eval();
+        assertEquals(interpreter.getStats().getBetaReductions(), context.getStats().getBetaReductions());
+        assertTrue(trace.toString().contains("After interpreter De Bruijn"));
+        EvalContext limited = new EvalContext(TraceSink.OFF, 1000);
+        try {
+            engine.evaluate("(\\x.x x) (\\x.x x)", limited);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(1001, limited.getStats().getBetaReductions());
+        }
+        // the limit is per call: the steps of the failed call do not count against the next one
+        assertEquals("\\.0", engine.evaluate("(\\x.x) (\\y.y)", limited).toString());
+        assertEquals(1002, limited.getStats().getBetaReductions());
+    }
+
+    @Test
+    public void testBatch() {
+        List<String> sources = new ArrayList<>();
+        for (int round = 0; round < 10; round++) sources.addAll(Arrays.asList(SOURCES));
+        sources.add(7, "(\\x.x x) (\\x.x x)");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchEvaluator batch = new BatchEvaluator(new Engine(), pool, 10_000);
+            List<BatchResult> results = batch.evaluate(sources);
+            assertEquals(sources.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                BatchResult result = results.get(i);
+                assertEquals(i, result.getIndex());
+                assertEquals(sources.get(i), result.getSource());
+                if (i == 7) {
+                    assertTrue(!result.isOk());
+                    assertTrue(result.getError() instanceof IllegalStateException);
+                    continue;
+                }
+                String expected = new Interpreter(new Parser(new Lexer(sources.get(i), TraceSink.OFF))).eval().toString();
+                assertEquals("source " + i, expected, result.getResult().toString());
+            }
+            assertEquals(0, batch.evaluate(new ArrayList<>()).size());
+            assertEquals(3, batch.evaluate(Arrays.stream(SOURCES).limit(3)).size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * \\g.g A1 ... An where Ai multiplies numerals: a normal form n branches wide.
+     */
+    static String wide(int n, int numeral) {
+        StringBuilder builder = new StringBuilder("(\\g.g");
+        for (int i = 0; i < n; i++) {
+            builder.append(' ').append(InterpreterTest.app("(\\m.\\n.\\f.m (n f))", numeral(numeral), numeral(numeral + i)));
+        }
+        return builder.append(')').toString();
+    }
+
+    @Test
+    public void testParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertSameNormalForms(new ParallelEvaluator(pool, 1));
+            assertSameNormalForms(new ParallelEvaluator());
+            String source = wide(8, 5);
+            Interpreter interpreter = new Interpreter(new Parser(new Lexer(source, TraceSink.OFF)));
+            String expected = interpreter.eval().toString();
+            ParallelEvaluator parallel = new ParallelEvaluator(pool, 1);
+            assertEquals(expected, parallel.evaluate(parse(source)).toString());
+            assertEquals(interpreter.getStats().getBetaReductions(), parallel.getStats().getBetaReductions());
+            assertTrue(parallel.getStats().getForks() > 0);
+            ParallelEvaluator sequential = new ParallelEvaluator(pool, Long.MAX_VALUE);
+            assertEquals(expected, sequential.evaluate(parse(source)).toString());
+            assertEquals(0, sequential.getStats().getForks());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cn.seecoder;
+
+/**
+ * Reduces a term whose nodes take more memory than the heap of the JVM, in a {@link MappedTermStore}.
+ * Run by EvaluatorTest in a child JVM with a small -Xmx:
+ *
+ * java -Xmx32m -cp target/classes:target/test-classes cn.seecoder.MappedStoreCheck k
+ *
+ * The term applies \x.p x x to itself k times, so the normal form is a binary tree of p with 2^k
+ * leaves y. Exits with 0 and prints the store size if the tree is right and bigger than the heap.
+ */
+public class MappedStoreCheck {
+
+    public static void main(String[] args) throws Exception {
+        int k = Integer.parseInt(args[0]);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < k; i++) source.append("(\\x.p x x) (");
+        source.append('y');
+        for (int i = 0; i < k; i++) source.append(')');
+        int status;
+        //the store is closed, and its temporary file deleted, before the JVM exits
+        try (MappedTermStore store = new MappedTermStore()) {
+            int term = new Parser(new Lexer(source.toString(), TraceSink.OFF)).parse(store);
+            int result = new ArenaEvaluator(store).evaluate(store, term);
+            long leaves = leaves(store, result, k);
+            long heap = Runtime.getRuntime().maxMemory();
+            System.out.println("store " + (store.bytes() >> 20) + " MB, heap " + (heap >> 20) + " MB, leaves " + leaves);
+            status = leaves == 1L << k && store.bytes() > heap ? 0 : leaves < 0 ? 2 : 1;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * @return number of leaves y of the tree of p at result, -1 if it is not such a tree
+     */
+    private static long leaves(TermStore store, int result, int k) {
+        long leaves = 0;
+        int[] stack = new int[4 * k + 4];
+        int top = 0;
+        stack[top++] = result;
+        while (top > 0) {
+            int node = stack[--top];
+            if (store.tag(node) == TermStore.APP) {
+                //((p left) right)
+                int pair = store.left(node);
+                if (store.tag(pair) != TermStore.APP || !"p".equals(store.name(store.left(store.left(pair))))) return -1;
+                stack[top++] = store.right(pair);
+                stack[top++] = store.right(node);
+            } else if (store.tag(node) == TermStore.VAR && "y".equals(store.name(store.left(node)))) {
+                leaves++;
+            } else {
+                return -1;
+            }
+        }
+        return leaves;
+    }
+}
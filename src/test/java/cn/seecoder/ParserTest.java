@@ -0,0 +1,283 @@
+package cn.seecoder;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParserTest {
+
+    static AST parse(String source) {
+        return new Parser(new Lexer(source, TraceSink.OFF)).parse();
+    }
+
+    /**
+     * n distinct binder names: a, b, ..., z, ba, bb, ...
+     */
+    static String name(int n) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return builder.reverse().toString();
+    }
+
+    /**
+     * n nested lambdas with distinct names whose body is the outermost variable.
+     */
+    static String nested(int n) {
+        StringBuilder builder = new StringBuilder(n * 6);
+        for (int i = 0; i < n; i++) builder.append('\\').append(name(i)).append('.');
+        return builder.append(name(0)).toString();
+    }
+
+    @Test
+    public void testShadowing() {
+        assertEquals("\\.\\.\\.(0 1)", parse("\\x.\\y.\\x.x y").toString());
+        assertEquals("\\.(\\.0 0)", parse("\\x.(\\x.x) x").toString());
+        assertEquals("\\.\\.(1 -1)", parse("\\x.\\y.x z").toString());
+    }
+
+    @Test
+    public void testNestedIndex() {
+        AST ast = parse(nested(100_000));
+        int depth = 0;
+        while (ast instanceof Abstraction) {
+            ast = ((Abstraction) ast).body;
+            depth++;
+        }
+        assertEquals(100_000, depth);
+        assertEquals(99_999, ((Identifier) ast).getDBindex());
+    }
+
+    /**
+     * Fastest of rounds parses of nested(n), in nanoseconds, each after a collection so the garbage of
+     * the one before does not count.
+     */
+    static long parseTime(int n, int rounds) {
+        String source = nested(n);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            System.gc();
+            long start = System.nanoTime();
+            parse(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Test
+    public void testNestedParseIsLinear() {
+        // warm up, then ten times the lambdas take 10-30 times as long, the larger name table being
+        // slower to reach; quadratic parsing would take 100 times as long
+        parseTime(10_000, 50);
+        parseTime(100_000, 5);
+        long small = parseTime(10_000, 20);
+        long large = parseTime(100_000, 7);
+        assertTrue(small + " ns for 10k, " + large + " ns for 100k", large < 50 * small);
+    }
+
+    @Test
+    public void testDeepParentheses() {
+        int n = 200_000;
+        StringBuilder builder = new StringBuilder(2 * n + 16);
+        for (int i = 0; i < n; i++) builder.append('(');
+        builder.append("\\x.x");
+        for (int i = 0; i < n; i++) builder.append(')');
+        assertEquals("\\.0", parse(builder.toString()).toString());
+    }
+
+    @Test
+    public void testBlankRuns() {
+        StringBuilder blanks = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) blanks.append(' ');
+        String source = "(\\x. \\y. x y)(\\x . x)".replace(" ", blanks);
+        assertEquals(parse("(\\x.\\y.x y)(\\x.x)").toString(), parse(source).toString());
+        assertEquals("(\\.\\.(1 0) \\.0)", parse(source).toString());
+    }
+
+    @Test
+    public void testScopeDepth() {
+        // a million binders: the old ArrayList context needed ~10^12 steps for this, Scope 10^6
+        Scope scope = new Scope();
+        int n = 1_000_000;
+        for (int i = 0; i < n; i++) scope.bind(name(i));
+        assertEquals(n - 1, scope.indexOf(name(0)));
+        assertEquals(0, scope.indexOf(name(n - 1)));
+        scope.bind(name(0));
+        assertEquals(0, scope.indexOf(name(0)));
+        scope.unbind(name(0));
+        assertEquals(n - 1, scope.indexOf(name(0)));
+        for (int i = n - 1; i >= 0; i--) scope.unbind(name(i));
+        assertEquals(-1, scope.indexOf(name(0)));
+    }
+
+    /**
+     * Number of nodes of ast counted as a tree, every shared node as often as it appears, and number of
+     * distinct node objects; returned as {tree, distinct}.
+     */
+    static long[] count(AST ast) {
+        IdentityHashMap<AST, Long> sizes = new IdentityHashMap<>();
+        ArrayDeque<AST> stack = new ArrayDeque<>();
+        stack.push(ast);
+        while (!stack.isEmpty()) {
+            AST node = stack.peek();
+            if (sizes.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            AST[] children = node instanceof Application
+                    ? new AST[]{((Application) node).lhs, ((Application) node).rhs}
+                    : node instanceof Abstraction ? new AST[]{((Abstraction) node).param, ((Abstraction) node).body} : new AST[0];
+            long size = 1;
+            boolean ready = true;
+            for (AST child : children) {
+                Long childSize = sizes.get(child);
+                if (childSize == null) {
+                    stack.push(child);
+                    ready = false;
+                } else {
+                    size += childSize;
+                }
+            }
+            if (ready) {
+                sizes.put(node, size);
+                stack.pop();
+            }
+        }
+        return new long[]{sizes.get(ast), sizes.size()};
+    }
+
+    @Test
+    public void testHashConsing() {
+        for (String source : new InterpreterTest().sources) {
+            AST tree = parse(source);
+            AST dag = new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, new HashCons()).parse();
+            assertEquals(tree.toString(), dag.toString());
+            assertEquals(tree.toShow(), dag.toShow());
+            assertEquals(tree.hash, dag.hash);
+        }
+        assertTrue(!new Parser(new Lexer("x", TraceSink.OFF), TraceSink.OFF, (HashCons) null).isHashConsing());
+        assertTrue(!new Parser(new Lexer("x", TraceSink.OFF), TraceSink.OFF, (ConcurrentHashCons) null).isHashConsing());
+    }
+
+    @Test
+    public void testHashConsingSharesSubterms() {
+        String source = InterpreterTest.app(InterpreterTest.EQ, InterpreterTest.FIVE, InterpreterTest.FIVE);
+        HashCons terms = new HashCons();
+        AST dag = new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, terms).parse();
+        long[] sizes = count(dag);
+        assertEquals(count(parse(source))[0], sizes[0]);
+        assertEquals(terms.size(), sizes[1]);
+        assertTrue(sizes[1] + " of " + sizes[0], sizes[1] * 3 < sizes[0]);
+        // doubling the source adds one application, not a second copy
+        String twice = "(" + source + ")(" + source + ")";
+        AST both = new Parser(new Lexer(twice, TraceSink.OFF), TraceSink.OFF, terms).parse();
+        assertTrue(((Application) both).lhs == dag && ((Application) both).rhs == dag);
+        assertEquals(sizes[1] + 1, terms.size());
+    }
+
+    @Test
+    public void testConcurrentHashConsing() throws Exception {
+        final String[] sources = new InterpreterTest().sources;
+        final ConcurrentHashCons terms = new ConcurrentHashCons(16);
+        final AST[][] parsed = new AST[8][];
+        Thread[] threads = new Thread[parsed.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                parsed[thread] = new AST[sources.length];
+                for (int i = 0; i < sources.length; i++) {
+                    //every thread goes through the corpus from another place
+                    int j = (i + thread * 5) % sources.length;
+                    parsed[thread][j] = new Parser(new Lexer(sources[j], TraceSink.OFF), TraceSink.OFF, terms).parse();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (int i = 0; i < sources.length; i++) {
+            AST tree = parse(sources[i]);
+            assertEquals(tree.toShow(), parsed[0][i].toShow());
+            for (AST[] other : parsed) assertTrue("source " + i, other[i] == parsed[0][i]);
+            assertTrue(terms.intern(tree) == parsed[0][i]);
+        }
+        HashCons single = new HashCons();
+        for (String source : sources) new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, single).parse();
+        assertEquals(single.size(), terms.getInserts());
+    }
+
+    @Test
+    public void testConcurrentHashConsingNames() {
+        // free names and alpha-variants have one structural hash, but must not share one bucket
+        ConcurrentHashCons terms = new ConcurrentHashCons(16);
+        int n = 200_000;
+        Identifier[] free = new Identifier[n];
+        Abstraction[] ids = new Abstraction[n];
+        Application[] apps = new Application[n];
+        for (int i = 0; i < n; i++) {
+            free[i] = terms.identifier(name(i), -1);
+            ids[i] = terms.abstraction(name(i), terms.identifier(name(i), 0));
+            // (\a.a) a, (\b.b) b, ...: one structural hash as well
+            apps[i] = terms.application(ids[i], free[i]);
+        }
+        System.gc();
+        for (int i = 0; i < n; i++) {
+            assertTrue(terms.identifier(name(i), -1) == free[i]);
+            assertTrue(terms.abstraction(name(i), terms.identifier(name(i), 0)) == ids[i]);
+            assertTrue(terms.application(ids[i], free[i]) == apps[i]);
+        }
+        // a free name, a bound variable, a lambda and an application per name
+        assertEquals(4L * n, terms.getInserts());
+        assertTrue(terms.longestChain() + " entries", terms.longestChain() < 16);
+    }
+
+    @Test
+    public void testInternDeepTerms() {
+        ConcurrentHashCons terms = new ConcurrentHashCons();
+        for (String source : new String[]{nested(100_000), EvaluatorTest.spine(200_000)}) {
+            AST tree = parse(source);
+            AST dag = new Parser(new Lexer(source, TraceSink.OFF), TraceSink.OFF, terms).parse();
+            assertTrue(terms.intern(tree) == dag);
+            assertTrue(terms.intern(dag) == dag);
+        }
+    }
+
+    @Test
+    public void testMetadata() {
+        AST ast = parse("\\x.(\\y.y x) z");
+        assertEquals(7, ast.getSize());
+        assertEquals(5, ast.getDepth());
+        assertTrue(ast.isClosed());
+        AST body = ((Abstraction) ast).body;
+        assertEquals(0, body.getMaxFree());
+        assertEquals(0, ((Application) body).lhs.getMaxFree());
+        assertEquals(-1, ((Application) body).rhs.getMaxFree());
+        assertEquals(100_000, ((Abstraction) parse(nested(100_000))).body.getDepth());
+    }
+
+    @Test
+    public void testArena() {
+        TermArena arena = new TermArena(16);
+        for (String source : new InterpreterTest().sources) {
+            arena.reset();
+            AST tree = parse(source);
+            int term = new Parser(new Lexer(source, TraceSink.OFF)).parse(arena);
+            assertEquals(tree.toString(), arena.toAST(term).toString());
+            assertEquals(tree.toShow(), arena.toAST(term).toShow());
+            assertEquals(tree.getMaxFree(), arena.maxFree(term));
+            assertEquals(tree.getSize(), arena.size());
+            assertEquals(tree.toShow(), arena.toAST(arena.fromAST(tree)).toShow());
+        }
+        assertEquals(-1, new Parser(new Lexer("", TraceSink.OFF)).parse(arena));
+        arena.reset();
+        int term = new Parser(new Lexer("(((" + nested(100_000) + ")))", TraceSink.OFF)).parse(arena);
+        assertEquals(100_001, arena.size());
+        for (int i = 0; i < 100_000; i++) term = arena.left(term);
+        assertEquals(99_999, arena.right(term));
+    }
+}